@@ -0,0 +1,215 @@
+package com.martiansoftware.martifacts.blobs;
+
+import com.martiansoftware.blobstore.Blob;
+import com.martiansoftware.blobstore.BlobStore;
+import com.martiansoftware.blobstore.Ref;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed (by SHA-1) storage for artifact data.
+ *
+ * Data is normally kept as-is in a BlobStore.  If compression is enabled,
+ * data that looks like text is instead gzipped on the way in and kept in a
+ * separate directory as [hash].gz (with its uncompressed size in
+ * [hash].size), where it can be served as-is to clients that accept gzip
+ * content encoding.  Reads check the compressed
+ * blobs first and then the BlobStore, so compression can be turned on or
+ * off at any time.
+ *
+ * @author mlamb
+ */
+public class Blobs {
+
+    private static final Logger log = LoggerFactory.getLogger(Blobs.class);
+    private static final int SNIFF_SIZE = 8192;    // how much data we look at to decide whether to compress
+    private static final int MIN_COMPRESS_SIZE = 1024; // anything smaller isn't worth the bother
+
+    private final BlobStore _blobstore;
+    private final Path _gzDir;
+    private final boolean _compress;
+
+    /**
+     * Details of a stored blob
+     */
+    public static class Stored {
+        public final String hash;
+        public final long size;
+        Stored(String hash, long size) { this.hash = hash; this.size = size; }
+    }
+
+    /**
+     * Creates a new Blobs in the specified directory
+     * @param dir the directory in which to store blobs
+     * @param compress if true, compress text-like data at rest
+     * @throws IOException
+     */
+    public Blobs(Path dir, boolean compress) throws IOException {
+        _blobstore = new BlobStore(dir.resolve("blobs"));
+        _gzDir = Files.createDirectories(dir.resolve("blobs-gz"));
+        _compress = compress;
+        if (_compress) log.info("Compressing text-like blobs at rest in {}", _gzDir);
+    }
+
+    /**
+     * Stores the specified data, hashing it as it is written
+     * @param data the data to store
+     * @return details of the stored blob
+     * @throws IOException
+     */
+    public Stored add(InputStream data) throws IOException {
+        if (!_compress) return stored(_blobstore.add(data));
+
+        byte[] head = new byte[SNIFF_SIZE];
+        int n = readFully(data, head);
+        if (n < MIN_COMPRESS_SIZE || !looksLikeText(head, n)) {
+            return stored(_blobstore.add(new SequenceInputStream(new ByteArrayInputStream(head, 0, n), data)));
+        }
+        return addCompressed(head, n, data);
+    }
+
+    /**
+     * Stores the contents of the specified file
+     * @param file the file to store
+     * @return details of the stored blob
+     * @throws IOException
+     */
+    public Stored add(Path file) throws IOException {
+        if (!_compress) return stored(_blobstore.add(file.toFile()));
+        try (InputStream in = Files.newInputStream(file)) {
+            return add(in);
+        }
+    }
+
+    /**
+     * Returns details of the blob with the specified hash, if it exists
+     * @param hash the hash of the blob
+     * @return details of the blob with the specified hash, if it exists
+     * @throws IOException
+     */
+    public Optional<Stored> get(String hash) throws IOException {
+        Optional<Path> gz = gzipFile(hash);
+        if (gz.isPresent()) return Optional.of(new Stored(hash, sizeOf(hash)));
+        Blob blob = _blobstore.get(new Ref(hash));
+        return (blob == null) ? Optional.empty() : Optional.of(stored(blob));
+    }
+
+    /**
+     * Returns the (uncompressed) data of the blob with the specified hash, if it exists
+     * @param hash the hash of the blob
+     * @return the data of the blob with the specified hash, if it exists
+     * @throws IOException
+     */
+    public Optional<InputStream> inputStream(String hash) throws IOException {
+        Optional<Path> gz = gzipFile(hash);
+        if (gz.isPresent()) return Optional.of(new GZIPInputStream(Files.newInputStream(gz.get()), 65536));
+        Blob blob = _blobstore.get(new Ref(hash));
+        return (blob == null) ? Optional.empty() : Optional.of(blob.inputStream());
+    }
+
+    /**
+     * Returns the gzipped file for the blob with the specified hash, if it
+     * is stored compressed
+     * @param hash the hash of the blob
+     * @return the gzipped file for the blob, if it is stored compressed
+     * @throws IOException
+     */
+    public Optional<Path> gzipFile(String hash) throws IOException {
+        Path gz = gzPath(hash);
+        return Files.exists(gz) ? Optional.of(gz) : Optional.empty();
+    }
+
+    private Stored addCompressed(byte[] head, int n, InputStream rest) throws IOException {
+        MessageDigest sha1 = sha1();
+        long size = n;
+        Path tmp = Files.createTempFile(_gzDir, "incoming-", ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp), 65536)) {
+                sha1.update(head, 0, n);
+                out.write(head, 0, n);
+                byte[] buf = new byte[65536];
+                for (int r = rest.read(buf); r != -1; r = rest.read(buf)) {
+                    sha1.update(buf, 0, r);
+                    out.write(buf, 0, r);
+                    size += r;
+                }
+            }
+            String hash = hex(sha1.digest());
+            if (!gzipFile(hash).isPresent()) {
+                Files.createDirectories(shardFor(hash));
+                writeSize(hash, size); // first, so that the size is there whenever the data is
+                Files.move(tmp, gzPath(hash), StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new Stored(hash, size);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Path shardFor(String hash) { return _gzDir.resolve(hash.substring(0, Math.min(2, hash.length())).toLowerCase()); }
+    private Path gzPath(String hash) { return shardFor(hash).resolve(hash.toLowerCase() + ".gz"); }
+    private Path sizePath(String hash) { return shardFor(hash).resolve(hash.toLowerCase() + ".size"); }
+
+    // the uncompressed size is kept beside the data, since the gzip trailer only has it modulo 2^32
+    private long sizeOf(String hash) throws IOException {
+        return Long.parseLong(new String(Files.readAllBytes(sizePath(hash)), StandardCharsets.US_ASCII).trim());
+    }
+
+    private void writeSize(String hash, long size) throws IOException {
+        Path tmp = Files.createTempFile(shardFor(hash), "incoming-", ".tmp");
+        try {
+            Files.write(tmp, Long.toString(size).getBytes(StandardCharsets.US_ASCII));
+            Files.move(tmp, sizePath(hash), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Stored stored(Blob blob) { return new Stored(blob.ref().toString(), blob.size()); }
+
+    // fills as much of buf as the stream allows, returning the number of bytes read
+    private static int readFully(InputStream in, byte[] buf) throws IOException {
+        int n = 0;
+        for (int r = 0; n < buf.length && r != -1; n += Math.max(r, 0)) r = in.read(buf, n, buf.length - n);
+        return n;
+    }
+
+    // text (ascii or utf-8) has no nul bytes and very few control characters
+    static boolean looksLikeText(byte[] buf, int n) {
+        int control = 0;
+        for (int i = 0; i < n; ++i) {
+            int b = buf[i] & 0xff;
+            if (b == 0) return false;
+            if (b < 0x20 && b != '\n' && b != '\r' && b != '\t' && b != '\f' && b != 0x1b) ++control;
+        }
+        return control * 100 < n; // less than 1% control characters
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available!", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder s = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) s.append(String.format("%02x", b));
+        return s.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package com.martiansoftware.martifacts.log;
+
+import com.martiansoftware.martifacts.model.Artifact;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.stream.Collectors;
+
+/**
+ * An Artifact in a LogArtifactStore.  Reading an Artifact never touches the
+ * log; tagging or untagging it writes the change through to the store and
+ * picks up the updated record.
+ *
+ * @author mlamb
+ */
+class LogArtifact implements Artifact {
+
+    private final LogArtifactStore _store;
+    private volatile LogArtifactStore.Record _record;
+
+    LogArtifact(LogArtifactStore store, LogArtifactStore.Record record) {
+        _store = store;
+        _record = record;
+    }
+
+    @Override public String id() { return _record.id; }
+    @Override public String name() { return _record.name; }
+    @Override public String hash() { return _record.hash; }
+    @Override public long size() { return _record.size; }
+    @Override public Date time() { return new Date(_record.time); }
+    @Override public Date timeAdded() { return new Date(_record.added); }
+    @Override public SortedSet<String> tags() { return _record.tags; }
+
+    @Override public LogArtifact tag(Collection<String> tags) {
+        _record = _store.tag(_record.id, tags);
+        return this;
+    }
+
+    @Override public LogArtifact untag(Collection<String> tags) {
+        _record = _store.untag(_record.id, tags);
+        return this;
+    }
+
+    @Override public InputStream inputStream() throws IOException {
+        Optional<InputStream> oi = _store.getInputStreamForHash(hash());
+        if (!oi.isPresent()) throw new IOException("No InputStream available for Artifact!");
+        return oi.get();
+    }
+
+    @Override public Optional<FileChannel> gzipChannel() throws IOException {
+        return _store.getGzipChannelForHash(hash());
+    }
+
+    @Override public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("%s [%s] [%s]\n", getClass().getSimpleName(), name(), id()));
+        s.append(String.format("   tags: %s\n", tags().stream().collect(Collectors.joining(", "))));
+        s.append(String.format("   hash: %s\n", hash()));
+        s.append(String.format("   size: %d\n", size()));
+        s.append(String.format("   time: %s\n", time()));
+        s.append(String.format("  added: %s\n", timeAdded()));
+        return s.toString();
+    }
+}
@@ -0,0 +1,551 @@
+package com.martiansoftware.martifacts.log;
+
+import com.martiansoftware.martifacts.blobs.Blobs;
+import com.martiansoftware.martifacts.model.Artifact;
+import com.martiansoftware.martifacts.model.ArtifactStore;
+import com.martiansoftware.martifacts.model.Cursor;
+import com.martiansoftware.martifacts.model.NewArtifact;
+import com.martiansoftware.martifacts.model.Page;
+import com.martiansoftware.martifacts.model.Query;
+import com.martiansoftware.martifacts.model.Tags;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An ArtifactStore that keeps all artifact metadata in memory, indexed by id,
+ * hash, name, tag, and time, and persists it in an append-only log (see
+ * MetadataLog) that is replayed at startup.  Artifact data is kept in Blobs
+ * just as by OrientArtifactStore, so the two can share a data directory (see
+ * importFrom() to migrate).  Queries use the same syntax (see Query).
+ *
+ * Log records are:
+ *   A id name sha1 size time added tags   an artifact was created (times in epoch millis, tags space-separated)
+ *   + id tags                             tags were added to an artifact
+ *   - id tags                             tags were removed from an artifact
+ *
+ * Writes are serialized, and each is forced to disk before it is applied in
+ * memory.  Readers only wait for a write while it is being applied, not
+ * while it is being forced to disk.
+ *
+ * @author mlamb
+ */
+public class LogArtifactStore implements ArtifactStore, Closeable {
+
+    static final String LOG_FILE = "metadata.log";
+    private static final Logger log = LoggerFactory.getLogger(LogArtifactStore.class);
+
+    // most recent first, then by descending id (see Cursor)
+    private static final Comparator<Record> NEWEST_FIRST =
+        Comparator.comparingLong((Record r) -> r.time).thenComparing(r -> r.id).reversed();
+
+    private final Blobs _blobs;
+    private final MetadataLog _log;
+    private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+    private final Map<String, Record> _byId = new java.util.HashMap<>();
+    private final Map<String, Set<String>> _idsByHash = new java.util.HashMap<>();
+    private final Map<String, Set<String>> _idsByName = new java.util.HashMap<>();  // by lowercase name
+    private final NavigableMap<String, Set<String>> _idsByTag = new java.util.TreeMap<>();
+    private final Map<String, Set<String>> _tagsByValue = new java.util.HashMap<>(); // e.g. "2" -> {"2", "version:2"}
+    private final NavigableSet<Record> _byTime = new TreeSet<>(NEWEST_FIRST);
+
+    /**
+     * The metadata of one Artifact.  Records are immutable; tagging or
+     * untagging an Artifact replaces its Record.
+     */
+    static class Record {
+        final String id, name, hash;
+        final long size, time, added;
+        final SortedSet<String> tags;
+
+        Record(String id, String name, String hash, long size, long time, long added, SortedSet<String> tags) {
+            this.id = id;
+            this.name = name;
+            this.hash = hash;
+            this.size = size;
+            this.time = time;
+            this.added = added;
+            this.tags = Collections.unmodifiableSortedSet(tags);
+        }
+
+        Record withTags(SortedSet<String> tags) { return new Record(id, name, hash, size, time, added, tags); }
+    }
+
+    public LogArtifactStore(Path p) throws IOException {
+        this(p, false);
+    }
+
+    /**
+     * Opens (or creates) a LogArtifactStore in the specified directory
+     * @param p the directory containing the store
+     * @param compressBlobs if true, text-like artifact data is compressed at rest
+     * @throws IOException
+     */
+    public LogArtifactStore(Path p, boolean compressBlobs) throws IOException {
+        long start = System.currentTimeMillis();
+        _blobs = new Blobs(p, compressBlobs);
+        _log = new MetadataLog(p.resolve(LOG_FILE), this::replay);
+        log.info("Loaded {} artifacts and {} tags from {} in {} ms.", _byId.size(), _idsByTag.size(), p.resolve(LOG_FILE), System.currentTimeMillis() - start);
+    }
+
+    @Override public void close() throws IOException {
+        _log.close();
+    }
+
+//  ----------------------------------------------------------------------------
+//  the log
+
+    private void replay(List<String> record) {
+        switch (record.get(0)) {
+            case "A":
+                put(new Record(record.get(1), record.get(2), record.get(3), Long.parseLong(record.get(4)),
+                                Long.parseLong(record.get(5)), Long.parseLong(record.get(6)), canonical(tagSet(record.get(7)))));
+                break;
+            case "+":
+            case "-":
+                Record r = _byId.get(record.get(1));
+                if (r == null) {
+                    log.warn("Ignoring tags for unknown artifact {} in {}", record.get(1), LOG_FILE);
+                    return;
+                }
+                replace(r, r.withTags(retagged(r.tags, record.get(0), canonical(tagSet(record.get(2))))));
+                break;
+            default: throw new IllegalArgumentException("Unknown record type in " + LOG_FILE + ": " + record.get(0));
+        }
+    }
+
+    private static List<String> created(Record r) {
+        return Arrays.asList("A", r.id, r.name, r.hash, Long.toString(r.size), Long.toString(r.time), Long.toString(r.added), String.join(" ", r.tags));
+    }
+
+    private static SortedSet<String> tagSet(String s) {
+        return s.isEmpty() ? new TreeSet<>() : new TreeSet<>(Arrays.asList(s.split(" ")));
+    }
+
+    // tag names are shared by many records, so replayed records refer to the indexed copy of each
+    private SortedSet<String> canonical(SortedSet<String> tags) {
+        SortedSet<String> result = new TreeSet<>();
+        for (String tag : tags) {
+            String key = _idsByTag.ceilingKey(tag);
+            result.add(tag.equals(key) ? key : tag);
+        }
+        return result;
+    }
+
+    private static SortedSet<String> retagged(Set<String> tags, String type, Collection<String> changed) {
+        SortedSet<String> result = new TreeSet<>(tags);
+        if ("+".equals(type)) result.addAll(changed); else result.removeAll(changed);
+        return result;
+    }
+
+//  ----------------------------------------------------------------------------
+//  the in-memory indexes, which must only be changed by a writer (see writes) while holding the write lock
+
+    private void put(Record r) {
+        _byId.put(r.id, r);
+        index(_idsByHash, r.hash, r.id);
+        index(_idsByName, r.name.toLowerCase(), r.id);
+        r.tags.forEach(t -> addTag(t, r.id));
+        _byTime.add(r);
+    }
+
+    // almost every hash and name belongs to a single artifact, so those are indexed as singletons until they aren't
+    private static void index(Map<String, Set<String>> index, String key, String id) {
+        Set<String> ids = index.get(key);
+        if (ids == null) index.put(key, Collections.singleton(id));
+        else if (ids.size() == 1) index.put(key, new java.util.HashSet<>(Arrays.asList(ids.iterator().next(), id)));
+        else ids.add(id);
+    }
+
+    private void replace(Record old, Record updated) {
+        _byId.put(updated.id, updated);
+        _byTime.remove(old);
+        _byTime.add(updated);
+        old.tags.stream().filter(t -> !updated.tags.contains(t)).forEach(t -> removeTag(t, old.id));
+        updated.tags.stream().filter(t -> !old.tags.contains(t)).forEach(t -> addTag(t, old.id));
+    }
+
+    private void addTag(String tag, String id) {
+        Set<String> ids = _idsByTag.get(tag);
+        if (ids == null) {
+            _idsByTag.put(tag, ids = new java.util.HashSet<>());
+            _tagsByValue.computeIfAbsent(Tags.value(tag), k -> new java.util.HashSet<>()).add(tag);
+        }
+        ids.add(id);
+    }
+
+    private void removeTag(String tag, String id) {
+        Set<String> ids = _idsByTag.get(tag);
+        if (ids == null || !ids.remove(id) || !ids.isEmpty()) return;
+        _idsByTag.remove(tag); // no longer used by anything
+        Set<String> tags = _tagsByValue.get(Tags.value(tag));
+        tags.remove(tag);
+        if (tags.isEmpty()) _tagsByValue.remove(Tags.value(tag));
+    }
+
+//  ----------------------------------------------------------------------------
+//  writes
+//
+//  writers are serialized on the log's monitor, so nothing else changes the indexes while a writer decides
+//  what to write, and the writer can read them without the read lock.  only applying a write that is already
+//  on disk takes the write lock, so readers aren't blocked while the log is forced to disk.
+
+    // appends records for new artifacts to the log and then indexes them.  records whose ids are already
+    // present are skipped.
+    private List<Record> append(List<Record> records) throws IOException {
+        synchronized (_log) {
+            List<Record> result = records.stream().filter(r -> !_byId.containsKey(r.id)).collect(Collectors.toList());
+            if (result.isEmpty()) return result;
+            _log.append(result.stream().map(LogArtifactStore::created).collect(Collectors.toList()));
+            _lock.writeLock().lock();
+            try {
+                result.forEach(this::put);
+            } finally {
+                _lock.writeLock().unlock();
+            }
+            return result;
+        }
+    }
+
+    private static Record newRecord(String name, String hash, long size, Date fileTime, Collection<String> tags, long added) {
+        return new Record(UUID.randomUUID().toString(), name, hash, size, fileTime.getTime(), added, new TreeSet<>(Tags.normalize(tags)));
+    }
+
+    Record tag(String id, Collection<String> tags) { return retag(id, "+", tags); }
+    Record untag(String id, Collection<String> tags) { return retag(id, "-", tags); }
+
+    private Record retag(String id, String type, Collection<String> tags) {
+        synchronized (_log) {
+            Record r = _byId.get(id);
+            if (r == null) throw new IllegalStateException("Artifact " + id + " no longer exists!");
+            SortedSet<String> changed = new TreeSet<>(Tags.normalize(tags));
+            if ("+".equals(type)) changed.removeAll(r.tags); else changed.retainAll(r.tags);
+            if (changed.isEmpty()) return r; // nothing to write
+            try {
+                _log.append(Collections.singletonList(Arrays.asList(type, id, String.join(" ", changed))));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Record updated = r.withTags(retagged(r.tags, type, changed));
+            _lock.writeLock().lock();
+            try {
+                replace(r, updated);
+            } finally {
+                _lock.writeLock().unlock();
+            }
+            return updated;
+        }
+    }
+
+    /**
+     * Copies every Artifact in another ArtifactStore that isn't already in this
+     * one, keeping its id, times, and tags.  Artifact data isn't copied, so the
+     * stores should share a data directory (e.g. to migrate from an
+     * OrientArtifactStore).  Safe to repeat.
+     *
+     * @param source the store to copy Artifacts from
+     * @return the number of Artifacts copied
+     * @throws IOException if the Artifacts cannot be written
+     */
+    public int importFrom(ArtifactStore source) throws IOException {
+        List<Record> records = source.all().stream()
+            .map(a -> new Record(a.id(), a.name(), a.hash(), a.size(), a.time().getTime(), a.timeAdded().getTime(), new TreeSet<>(a.tags())))
+            .collect(Collectors.toList());
+        return append(records).size();
+    }
+
+    private List<Artifact> artifacts(Collection<Record> records) {
+        return Collections.unmodifiableList(records.stream().map(r -> new LogArtifact(this, r)).collect(Collectors.toList()));
+    }
+
+    private Artifact create(String name, Date fileTime, Blobs.Stored blob, Collection<String> tags) throws IOException {
+        return artifacts(append(Collections.singletonList(newRecord(name, blob.hash, blob.size, fileTime, tags, System.currentTimeMillis())))).get(0);
+    }
+
+    @Override
+    public Artifact create(String name, Path data, Collection<String> tags) throws IOException {
+        if (!Files.isRegularFile(data)) throw new IOException("Cannot add " + data + ": must be a regular file");
+        return create(name,
+                        new Date(Files.getLastModifiedTime(data).toMillis()),
+                        _blobs.add(data),
+                        tags);
+    }
+
+    @Override
+    public Artifact create(String name, InputStream data, Date fileTime, Collection<String> tags) throws IOException {
+        return create(name,
+                        fileTime,
+                        _blobs.add(data),
+                        tags);
+    }
+
+    @Override
+    public String store(InputStream data) throws IOException {
+        return _blobs.add(data).hash;
+    }
+
+    @Override
+    public Optional<Artifact> createFromHash(String name, String hash, Date fileTime, Collection<String> tags) throws IOException {
+        Optional<Blobs.Stored> blob = _blobs.get(hash);
+        if (!blob.isPresent()) return Optional.empty();
+        return Optional.of(create(name, fileTime, blob.get(), tags));
+    }
+
+    @Override
+    public List<Artifact> createAll(List<NewArtifact> artifacts) throws IOException {
+        Map<String, Long> sizes = new java.util.HashMap<>();
+        for (NewArtifact a : artifacts) {
+            if (sizes.containsKey(a.hash())) continue;
+            Optional<Blobs.Stored> blob = _blobs.get(a.hash());
+            if (!blob.isPresent()) throw new IOException("No data stored for hash " + a.hash());
+            sizes.put(a.hash(), blob.get().size);
+        }
+        long added = System.currentTimeMillis();
+        return artifacts(append(artifacts.stream()
+                                    .map(a -> newRecord(a.name(), a.hash(), sizes.get(a.hash()), a.fileTime(), a.tags(), added))
+                                    .collect(Collectors.toList())));
+    }
+
+    @Override
+    public Optional<Long> dataSize(String hash) throws IOException {
+        return _blobs.get(hash).map(blob -> blob.size);
+    }
+
+//  ----------------------------------------------------------------------------
+//  reads
+
+    @Override public SortedSet<String> tags() {
+        _lock.readLock().lock();
+        try {
+            return Collections.unmodifiableSortedSet(new TreeSet<>(_idsByTag.keySet()));
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    @Override public SortedMap<String, Long> tagStats() {
+        SortedMap<String, Long> result = new java.util.TreeMap<>();
+        _lock.readLock().lock();
+        try {
+            _idsByTag.forEach((tag, ids) -> result.put(tag, (long) ids.size()));
+        } finally {
+            _lock.readLock().unlock();
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+
+    @Override
+    public Collection<Artifact> findByTags(Collection<String> tags) {
+        Collection<String> ntags = Tags.normalize(tags);
+        if (ntags.isEmpty()) return Collections.EMPTY_LIST;
+        return findByQuery(ntags.stream().map(t -> "tag:" + t).collect(Collectors.joining(" ")));
+    }
+
+    @Override
+    public Collection<Artifact> findByHash(String hash) {
+        _lock.readLock().lock();
+        try {
+            return artifacts(_idsByHash.getOrDefault(hash.toLowerCase(), Collections.emptySet()).stream()
+                                .map(_byId::get)
+                                .sorted(NEWEST_FIRST)
+                                .collect(Collectors.toList()));
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Artifact> findById(String id) {
+        _lock.readLock().lock();
+        try {
+            return Optional.ofNullable(_byId.get(id)).map(r -> new LogArtifact(this, r));
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    @Override public Collection<Artifact> findByQuery(String searchQuery) {
+        Query query = Query.parse(searchQuery);
+        if (query.isEmpty()) return all();
+        _lock.readLock().lock();
+        try {
+            return artifacts(matching(query).sorted(NEWEST_FIRST).collect(Collectors.toList()));
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    @Override public Page findByQuery(String searchQuery, Optional<Cursor> after, int limit) {
+        Query query = Query.parse(searchQuery);
+        Optional<Record> cursor = after.map(c -> new Record(c.id(), null, null, 0, c.time().getTime(), 0, new TreeSet<>()));
+        _lock.readLock().lock();
+        try {
+            Optional<Collection<Record>> candidates = candidates(query);
+            // without candidates, walk the time index from the cursor and stop at the limit
+            Stream<Record> records = candidates.isPresent()
+                ? candidates.get().stream().sorted(NEWEST_FIRST)
+                : cursor.map(c -> _byTime.tailSet(c, false)).orElse(_byTime).stream();
+            return new Page(artifacts(records
+                                        .filter(r -> !cursor.isPresent() || NEWEST_FIRST.compare(cursor.get(), r) < 0)
+                                        .filter(predicate(query))
+                                        .limit(limit)
+                                        .collect(Collectors.toList())),
+                            limit);
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    @Override public long countByQuery(String searchQuery) {
+        Query query = Query.parse(searchQuery);
+        _lock.readLock().lock();
+        try {
+            return query.isEmpty() ? _byId.size() : matching(query).count();
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    @Override public SortedMap<String, Long> facets(String searchQuery) {
+        Query query = Query.parse(searchQuery);
+        if (query.isEmpty()) return tagStats();
+        SortedMap<String, Long> result = new java.util.TreeMap<>();
+        _lock.readLock().lock();
+        try {
+            matching(query).forEach(r -> r.tags.forEach(t -> result.merge(t, 1L, Long::sum)));
+        } finally {
+            _lock.readLock().unlock();
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+
+    @Override public Map<String, Object> stats() {
+        Map<String, Object> result = new java.util.TreeMap<>();
+        _lock.readLock().lock();
+        try {
+            result.put("artifacts", _byId.size());
+            result.put("tags", _idsByTag.size());
+        } finally {
+            _lock.readLock().unlock();
+        }
+        result.put("log.bytes", _log.size());
+        result.put("log.records", _log.records());
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public Collection<Artifact> all() {
+        _lock.readLock().lock();
+        try {
+            return artifacts(_byTime.descendingSet()); // oldest first
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+//  ----------------------------------------------------------------------------
+//  query evaluation (see Query), which must only be done while holding the read lock
+
+    // all matching records, in no particular order
+    private Stream<Record> matching(Query query) {
+        Optional<Collection<Record>> candidates = candidates(query);
+        return (candidates.isPresent() ? candidates.get() : _byId.values()).stream().filter(predicate(query));
+    }
+
+    // the tags matched by a tag term: a tag of that name, or any "key:value" tag with that value
+    private Set<String> tagsMatching(String term) {
+        Set<String> result = new java.util.HashSet<>(_tagsByValue.getOrDefault(term, Collections.emptySet()));
+        if (_idsByTag.containsKey(term)) result.add(term);
+        return result;
+    }
+
+    // uses the indexes to narrow the search to the records that might match, if possible.  tag terms
+    // narrow it to the records having all of them (starting with the rarest), and ids, hashes, and plain
+    // names narrow it to the records having any of them.
+    private Optional<Collection<Record>> candidates(Query query) {
+        if (!query.tags().isEmpty()) {
+            List<List<Set<String>>> terms = new java.util.ArrayList<>();
+            for (String term : query.tags()) {
+                terms.add(tagsMatching(term).stream().map(_idsByTag::get).collect(Collectors.toList()));
+            }
+            terms.sort(Comparator.comparingInt(term -> term.stream().mapToInt(Set::size).sum()));
+            // an artifact can have several of the tags a term matches (e.g. "2" and "version:2"), so take each once
+            Set<String> ids = new java.util.HashSet<>();
+            terms.get(0).forEach(ids::addAll);
+            return Optional.of(ids.stream()
+                                .filter(id -> terms.stream().skip(1).allMatch(term -> term.stream().anyMatch(s -> s.contains(id))))
+                                .map(_byId::get)
+                                .collect(Collectors.toList()));
+        }
+        if (query.hasGeneralTerms() && query.names().stream().noneMatch(Query::isGlob)) {
+            Set<String> ids = new java.util.HashSet<>();
+            query.ids().stream().filter(_byId::containsKey).forEach(ids::add);
+            query.hashes().forEach(h -> ids.addAll(_idsByHash.getOrDefault(h, Collections.emptySet())));
+            query.names().forEach(n -> ids.addAll(_idsByName.getOrDefault(n, Collections.emptySet())));
+            return Optional.of(ids.stream().map(_byId::get).collect(Collectors.toList()));
+        }
+        return Optional.empty();
+    }
+
+    private Predicate<Record> predicate(Query query) {
+        Predicate<Record> result = r -> true;
+        if (query.hasGeneralTerms()) {
+            Set<String> ids = new java.util.HashSet<>(query.ids());
+            Set<String> hashes = new java.util.HashSet<>(query.hashes());
+            List<Predicate<String>> names = query.names().stream()
+                .map(n -> Query.isGlob(n) ? matches(Query.globPattern(n)) : (Predicate<String>) n::equalsIgnoreCase)
+                .collect(Collectors.toList());
+            result = r -> ids.contains(r.id) || hashes.contains(r.hash) || names.stream().anyMatch(n -> n.test(r.name));
+        }
+        if (!query.dates().isEmpty()) {
+            result = result.and(r -> query.dates().stream().anyMatch(dr -> dr.contains(new Date(r.time))));
+        }
+        if (!query.added().isEmpty()) {
+            result = result.and(r -> query.added().stream().anyMatch(dr -> dr.contains(new Date(r.added))));
+        }
+        for (String term : query.tags()) {
+            Set<String> tags = tagsMatching(term);
+            result = result.and(r -> !Collections.disjoint(r.tags, tags));
+        }
+        return result;
+    }
+
+    private static Predicate<String> matches(Pattern p) { return s -> p.matcher(s).matches(); }
+
+    Optional<InputStream> getInputStreamForHash(String hash) throws IOException {
+        return _blobs.inputStream(hash);
+    }
+
+    Optional<FileChannel> getGzipChannelForHash(String hash) throws IOException {
+        Optional<Path> gz = _blobs.gzipFile(hash);
+        return gz.isPresent() ? Optional.of(FileChannel.open(gz.get(), StandardOpenOption.READ)) : Optional.empty();
+    }
+}
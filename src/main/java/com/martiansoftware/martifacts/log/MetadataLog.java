@@ -0,0 +1,155 @@
+package com.martiansoftware.martifacts.log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only log of artifact metadata records.  The log is UTF-8 text,
+ * one record per line, with tab-separated fields (tabs, newlines, carriage
+ * returns, and backslashes within fields are escaped with backslashes).  The
+ * first field is the type of the record; see LogArtifactStore for the types.
+ *
+ * Every append ends with a commit line (".").  When the log is opened, any
+ * records after the last commit line (e.g. from a write torn by a crash)
+ * are discarded, so appends are all-or-nothing.
+ *
+ * @author mlamb
+ */
+class MetadataLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MetadataLog.class);
+    private static final List<String> HEADER = Arrays.asList("martifacts-log", "1");
+    private static final String COMMIT = ".";
+
+    private final Path _path;
+    private final FileChannel _channel;
+    private volatile long _size; // bytes committed, which is where the next append goes
+    private volatile long _records = 0; // both only changed while synchronized, but read without waiting for an append
+
+    /**
+     * Opens (or creates) the log at the specified path, replaying all of its
+     * committed records
+     * @param path the location of the log
+     * @param replay receives each committed record (as a list of fields), in order
+     * @throws IOException if the log cannot be opened or is not a metadata log
+     */
+    MetadataLog(Path path, Consumer<List<String>> replay) throws IOException {
+        _path = path;
+        _channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        _size = _channel.size() == 0 ? 0 : replay(replay);
+        if (_size == 0) { // a new log, or one whose header was never committed
+            _channel.truncate(0);
+            write(Collections.singletonList(HEADER));
+        } else if (_channel.size() > _size) {
+            log.warn("Discarding {} bytes of uncommitted records at the end of {}", _channel.size() - _size, path);
+            _channel.truncate(_size);
+        }
+    }
+
+    private long replay(Consumer<List<String>> replay) throws IOException {
+        long committed = 0, offset = 0;
+        List<List<String>> pending = new java.util.ArrayList<>();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        boolean first = true;
+        ByteBuffer buf = ByteBuffer.allocate(65536);
+        for (long position = 0; _channel.read(buf, position) > 0; position += buf.position(), buf.clear()) {
+            byte[] bytes = buf.array();
+            int start = 0;
+            for (int i = 0; i < buf.position(); ++i) {
+                if (bytes[i] != '\n') continue;
+                line.write(bytes, start, i - start);
+                offset = position + i + 1;
+                start = i + 1;
+                List<String> record = fields(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                line.reset();
+                if (first) {
+                    if (!record.get(0).equals(HEADER.get(0))) throw new IOException(_path + " is not a martifacts metadata log");
+                    if (!record.equals(HEADER)) throw new IOException("Unsupported metadata log version in " + _path + ": " + record);
+                    first = false;
+                } else if (record.size() == 1 && record.get(0).equals(COMMIT)) {
+                    pending.forEach(replay);
+                    _records += pending.size();
+                    pending.clear();
+                    committed = offset;
+                } else {
+                    pending.add(record);
+                }
+            }
+            line.write(bytes, start, buf.position() - start);
+        }
+        return committed;
+    }
+
+    /**
+     * Appends the specified records and forces them to disk
+     * @param records the records to append, each a list of fields
+     * @throws IOException if the records cannot be written
+     */
+    synchronized void append(List<List<String>> records) throws IOException {
+        write(records);
+        _records += records.size();
+    }
+
+    private void write(List<List<String>> records) throws IOException {
+        StringBuilder s = new StringBuilder();
+        for (List<String> record : records) {
+            for (int i = 0; i < record.size(); ++i) {
+                if (i > 0) s.append('\t');
+                escape(record.get(i), s);
+            }
+            s.append('\n');
+        }
+        s.append(COMMIT).append('\n');
+        ByteBuffer buf = StandardCharsets.UTF_8.encode(s.toString());
+        long position = _size;
+        while (buf.hasRemaining()) position += _channel.write(buf, position);
+        _channel.force(false);
+        _size = position;
+    }
+
+    long size() { return _size; }
+    long records() { return _records; }
+
+    @Override public synchronized void close() throws IOException { _channel.close(); }
+
+    private static void escape(String field, StringBuilder s) {
+        for (char c : field.toCharArray()) {
+            switch (c) {
+                case '\\': s.append("\\\\"); break;
+                case '\t': s.append("\\t"); break;
+                case '\n': s.append("\\n"); break;
+                case '\r': s.append("\\r"); break;
+                default: s.append(c);
+            }
+        }
+    }
+
+    private static List<String> fields(String line) {
+        List<String> result = new java.util.ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); ++i) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                result.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char e = line.charAt(++i);
+                field.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+            } else field.append(c);
+        }
+        result.add(field.toString());
+        return result;
+    }
+}
@@ -2,12 +2,15 @@ package com.martiansoftware.martifacts.model;
 
 import static com.martiansoftware.boom.Boom.request;
 import com.martiansoftware.martifacts.web.AppRootHelper;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
+import java.util.Optional;
 import java.util.SortedSet;
 import java.util.stream.Collectors;
 
@@ -94,6 +97,30 @@ public interface Artifact {
      */
     public InputStream inputStream() throws IOException;
     
+    /**
+     * Returns this Artifact's data as a FileChannel, if the data is backed by
+     * a plain file.  This allows the data to be sent without copying it through
+     * the heap.  The caller is responsible for closing the channel.
+     * @return this Artifact's data as a FileChannel, if available
+     * @throws IOException 
+     */
+    public default Optional<FileChannel> channel() throws IOException {
+        InputStream in = inputStream();
+        if (in instanceof FileInputStream) return Optional.of(((FileInputStream) in).getChannel());
+        in.close();
+        return Optional.empty();
+    }
+
+    /**
+     * Returns this Artifact's data, gzip-compressed, as a FileChannel if the
+     * data is stored that way.  The caller is responsible for closing the channel.
+     * @return this Artifact's gzipped data as a FileChannel, if available
+     * @throws IOException 
+     */
+    public default Optional<FileChannel> gzipChannel() throws IOException {
+        return Optional.empty();
+    }
+    
     /**
      * Stores attributes in a map for easy json-ing
      * @return a Map representation of this Artifact
@@ -4,7 +4,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -47,6 +50,46 @@ public interface ArtifactStore {
      * @throws IOException if the Artifact cannot be created
      */
     public Artifact create(String name, InputStream data, Date fileTime, Collection<String> tags) throws IOException;
+
+    /**
+     * Stores artifact data without creating an Artifact for it.  The data is
+     * hashed as it is written, and may subsequently be used to create any
+     * number of Artifacts via createFromHash().
+     * @param data an InputStream containing the artifact data itself
+     * @return the hash (aka blob id) of the stored data
+     * @throws IOException if the data cannot be stored
+     */
+    public String store(InputStream data) throws IOException;
+
+    /**
+     * Creates a new Artifact with the specified name and tags, using data
+     * already present in the store
+     * @param name the name of the new Artifact
+     * @param hash the hash (aka blob id) of the data
+     * @param fileTime the file timestamp to associate with the data (e.g., created or last modified)
+     * @param tags the tags to assign to the artifact
+     * @return the newly created Artifact, or empty if no data with the specified hash is stored
+     * @throws IOException if the Artifact cannot be created
+     */
+    public Optional<Artifact> createFromHash(String name, String hash, Date fileTime, Collection<String> tags) throws IOException;
+
+    /**
+     * Creates several new Artifacts, using data already present in the store,
+     * all at once.  Either all of the Artifacts are created or none are.
+     * @param artifacts the Artifacts to create
+     * @return the newly created Artifacts, in the same order as requested
+     * @throws IOException if the Artifacts cannot be created (e.g., because
+     *         data for any of them is not present in the store)
+     */
+    public List<Artifact> createAll(List<NewArtifact> artifacts) throws IOException;
+
+    /**
+     * Returns the size of the stored data with the specified hash, if any
+     * @param hash the hash (aka blob id) of the data
+     * @return the size of the stored data in bytes, or empty if no such data is stored
+     * @throws IOException if the store cannot be read
+     */
+    public Optional<Long> dataSize(String hash) throws IOException;
     
     /**
      * Finds all Artifacts that contain all of the specified tags
@@ -75,6 +118,40 @@ public interface ArtifactStore {
      * @return all matching Artifacts
      */
     public Collection<Artifact> findByQuery(String searchQuery);
+
+    /**
+     * Finds one page of Artifacts that match an implementation-specific query
+     * string, ordered by time (most recent first) and then by id.
+     * @param searchQuery an implementation-specific query string.
+     * @param after if present, only Artifacts that sort after this Cursor are returned
+     * @param limit the maximum number of Artifacts to return
+     * @return a page of matching Artifacts
+     */
+    public Page findByQuery(String searchQuery, Optional<Cursor> after, int limit);
+
+    /**
+     * Counts all Artifacts that match an implementation-specific query string.
+     * @param searchQuery an implementation-specific query string.
+     * @return the number of matching Artifacts
+     */
+    public long countByQuery(String searchQuery);
+
+    /**
+     * Get the tags of all Artifacts that match an implementation-specific
+     * query string, along with the number of matching Artifacts using each.
+     * @param searchQuery an implementation-specific query string.
+     * @return a map of tags to tag counts within the matching Artifacts
+     */
+    public SortedMap<String, Long> facets(String searchQuery);
+
+    /**
+     * Returns implementation-specific statistics about the store (e.g. cache
+     * hit counts), by name.
+     * @return statistics about the store
+     */
+    public default Map<String, Object> stats() {
+        return Collections.emptyMap();
+    }
     
     /**
      * Returns all Artifacts
@@ -0,0 +1,66 @@
+package com.martiansoftware.martifacts.model;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Marks a position in a list of Artifacts ordered by time (most recent first)
+ * and then by id, so that the next page of results can be read by looking for
+ * Artifacts that sort after it rather than skipping over the ones before it.
+ *
+ * Cursors are passed to clients as opaque strings of the form [millis]_[id].
+ *
+ * @author mlamb
+ */
+public class Cursor {
+
+    private final long _time;
+    private final String _id;
+
+    public Cursor(Date time, String id) {
+        _time = time.getTime();
+        _id = id;
+    }
+
+    /**
+     * Returns a Cursor positioned at the specified Artifact
+     * @param a the Artifact
+     * @return a Cursor positioned at the specified Artifact
+     */
+    public static Cursor at(Artifact a) { return new Cursor(a.time(), a.id()); }
+
+    /**
+     * Parses a Cursor from its string form
+     * @param s the string form of a Cursor
+     * @return the Cursor
+     * @throws IllegalArgumentException if the string is not a valid Cursor
+     */
+    public static Cursor parse(String s) {
+        int i = s.indexOf('_');
+        if (i < 1 || i == s.length() - 1) throw new IllegalArgumentException("Invalid cursor: '" + s + "'");
+        return new Cursor(new Date(Long.parseLong(s.substring(0, i))), s.substring(i + 1));
+    }
+
+    public Date time() { return new Date(_time); }
+    public String id() { return _id; }
+
+    /**
+     * Returns true if the specified Artifact sorts after this Cursor
+     * @param a the Artifact to check
+     * @return true if the specified Artifact sorts after this Cursor
+     */
+    public boolean precedes(Artifact a) {
+        long t = a.time().getTime();
+        return t < _time || (t == _time && a.id().compareTo(_id) < 0);
+    }
+
+    @Override public String toString() { return String.format("%d_%s", _time, _id); }
+
+    @Override public int hashCode() { return Objects.hash(_time, _id); }
+
+    @Override public boolean equals(Object obj) {
+        if (!(obj instanceof Cursor)) return false;
+        Cursor other = (Cursor) obj;
+        return _time == other._time && Objects.equals(_id, other._id);
+    }
+}
@@ -0,0 +1,37 @@
+package com.martiansoftware.martifacts.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * Describes an Artifact to be created from data already in an ArtifactStore
+ *
+ * @author mlamb
+ */
+public class NewArtifact {
+
+    private final String _name;
+    private final String _hash;
+    private final Date _fileTime;
+    private final Collection<String> _tags;
+
+    /**
+     * Describes a new Artifact
+     * @param name the name of the new Artifact
+     * @param hash the hash (aka blob id) of the Artifact's data
+     * @param fileTime the file timestamp to associate with the data (e.g., created or last modified)
+     * @param tags the tags to assign to the artifact
+     */
+    public NewArtifact(String name, String hash, Date fileTime, Collection<String> tags) {
+        _name = name;
+        _hash = hash;
+        _fileTime = fileTime;
+        _tags = Collections.unmodifiableCollection(Tags.normalize(tags));
+    }
+
+    public String name() { return _name; }
+    public String hash() { return _hash; }
+    public Date fileTime() { return _fileTime; }
+    public Collection<String> tags() { return _tags; }
+}
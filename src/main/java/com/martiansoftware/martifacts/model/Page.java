@@ -0,0 +1,31 @@
+package com.martiansoftware.martifacts.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A page of Artifacts, ordered by time (most recent first) and then by id,
+ * along with the Cursor for the following page, if there might be one.
+ *
+ * @author mlamb
+ */
+public class Page {
+
+    private final List<Artifact> _artifacts;
+    private final Optional<Cursor> _next;
+
+    /**
+     * Creates a new Page
+     * @param artifacts the Artifacts on this page
+     * @param limit the maximum number of Artifacts that were requested.  If the
+     *        page is full, there might be more to read.
+     */
+    public Page(List<Artifact> artifacts, int limit) {
+        _artifacts = Collections.unmodifiableList(artifacts);
+        _next = (artifacts.size() < limit || artifacts.isEmpty()) ? Optional.empty() : Optional.of(Cursor.at(artifacts.get(artifacts.size() - 1)));
+    }
+
+    public List<Artifact> artifacts() { return _artifacts; }
+    public Optional<Cursor> next() { return _next; }
+}
@@ -0,0 +1,135 @@
+package com.martiansoftware.martifacts.model;
+
+import com.martiansoftware.time.DateRange;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed search query, shared by ArtifactStore implementations.  Queries
+ * are whitespace-separated, case-insensitive terms.  The kind of most terms
+ * can be recognized automatically, but any term can be forced to a specific
+ * kind with a prefix:
+ *
+ *   added:DATES  the artifact was added within a date range (prefix required)
+ *   id:ID        the artifact has the id (any uuid)
+ *   sha1:HASH    the artifact has the hash (any sha-1 hash)
+ *   name:NAME    the artifact has the name (any glob containing * or ?)
+ *   date:DATES   the artifact's time is within a date range (any date range, see DateRange)
+ *   tag:TAG      the artifact has the tag (anything else)
+ *
+ * An artifact matches if it matches ANY id, hash, or name term (if there are
+ * any), AND any date term (if there are any), AND any added term (if there
+ * are any), AND ALL tag terms.  A tag term matches either a tag of that name
+ * or any "key:value" tag with that value (e.g. "2" matches "version:2").
+ *
+ * @author mlamb
+ */
+public class Query {
+
+    private final List<String> _ids = new java.util.ArrayList<>();
+    private final List<String> _hashes = new java.util.ArrayList<>();
+    private final List<String> _names = new java.util.ArrayList<>();
+    private final List<DateRange> _dates = new java.util.ArrayList<>();
+    private final List<DateRange> _added = new java.util.ArrayList<>();
+    private final Set<String> _tags = new java.util.LinkedHashSet<>();
+
+    private Query() {}
+
+    /**
+     * Parses a query
+     * @param query the query to parse
+     * @return the parsed query
+     * @throws IllegalArgumentException if the query is invalid (e.g. contains an invalid date range)
+     */
+    public static Query parse(String query) {
+        Query result = new Query();
+        List<TermMatcher> matchers = new java.util.ArrayList<>();
+        matchers.add(new TermMatcher("added:")                                                  // only when prefixed with "added:"
+                        .onMatch(s -> result._added.add(DateRange.forQuery(s))));
+        matchers.add(new TermMatcher("id:", "^\\p{XDigit}{8}-(?:\\p{XDigit}{4}-){3}\\p{XDigit}{12}$")  // a UUID or manually prefixed with "id:"
+                        .onMatch(result._ids::add));
+        matchers.add(new TermMatcher("sha1:", "^\\p{XDigit}{40}$")                              // a SHA-1 hash or manually prefixed with "sha1:"
+                        .onMatch(result._hashes::add));
+        matchers.add(new TermMatcher("name:", ".*[*?].*")                                      // any file glob or manually prefixed with "name:"
+                        .onMatch(result._names::add));
+        matchers.add(new TermMatcher("date:", DateRange.regexes())
+                        .onMatch(s -> result._dates.add(DateRange.forQuery(s))));
+        matchers.add(new TermMatcher("tag:", ".+")                                              // anything else or manually prefixed with "tag:"
+                        .onMatch(s -> result._tags.addAll(Tags.normalize(Collections.singleton(s)))));
+
+        Arrays.stream(query.toLowerCase().split("\\s+"))
+            .filter(s -> !s.isEmpty())
+            .forEach(s -> matchers.stream().filter(m -> m.matchSuccess(s)).findFirst().orElseThrow(IllegalArgumentException::new));
+        return result;
+    }
+
+    public List<String> ids() { return Collections.unmodifiableList(_ids); }
+    public List<String> hashes() { return Collections.unmodifiableList(_hashes); }
+    public List<String> names() { return Collections.unmodifiableList(_names); }         // (lowercase) names and name globs
+    public List<DateRange> dates() { return Collections.unmodifiableList(_dates); }
+    public List<DateRange> added() { return Collections.unmodifiableList(_added); }
+    public Collection<String> tags() { return Collections.unmodifiableSet(_tags); }      // normalized
+
+    public boolean hasGeneralTerms() { return !(_ids.isEmpty() && _hashes.isEmpty() && _names.isEmpty()); }
+    public boolean isEmpty() { return !hasGeneralTerms() && _dates.isEmpty() && _added.isEmpty() && _tags.isEmpty(); }
+
+    /**
+     * Returns true if the specified name term is a glob
+     * @param name the name term
+     * @return true if the name term contains * or ?
+     */
+    public static boolean isGlob(String name) { return name.contains("*") || name.contains("?"); }
+
+    /**
+     * Returns a case-insensitive Pattern matching the specified glob (with special characters * and ?)
+     * @param glob the glob
+     * @return a Pattern matching the glob
+     */
+    public static Pattern globPattern(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+                literal.setLength(0);
+                regex.append(c == '*' ? ".*" : ".");
+            } else literal.append(c);
+        }
+        if (literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+        return Pattern.compile(regex.toString(), Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+    }
+
+    // recognizes one kind of term.  for some terms we can automatically figure out what kind of search term
+    // they are (e.g., a file glob only applies to a filename, and if something is clearly a sha1 hash we can
+    // safely assume that's what the user is looking for).  a prefix forces a specific kind as well, in case
+    // the user really really wants a tag that looks like e.g. a UUID.
+    private static class TermMatcher {
+        private final String _prefix;                                         // if present and query term matches this, forces a match.
+        private final List<Pattern> _patterns = new java.util.ArrayList<>();  // used to auto-match if no term prefix present in query term
+        private Consumer<String> _action;                                     // what to do if there's a match
+        TermMatcher(String prefixToForce, String... regexes) {
+            _prefix = prefixToForce;
+            for (String regex : regexes) _patterns.add(Pattern.compile(regex));
+        }
+        private String match(String term) {                                   // if there's a match, what is its text?  (strip prefix if present)
+            if (term.startsWith(_prefix)) return term.substring(_prefix.length());
+            for (Pattern p : _patterns) {
+                Matcher m = p.matcher(term);
+                if (m.matches()) return term;
+            }
+            return null;                                                      // no match for you!
+        }
+        TermMatcher onMatch(Consumer<String> action) { _action = action; return this; }
+        boolean matchSuccess(String s) {                                      // if this matches, call the action and return true
+            String m = match(s);
+            if (m != null) _action.accept(m);
+            return m != null;
+        }
+    }
+}
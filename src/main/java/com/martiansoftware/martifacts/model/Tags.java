@@ -18,6 +18,16 @@ public class Tags {
         return tag.trim().replaceAll("\\s", "_").toLowerCase();
     }
     
+    /**
+     * Returns the value of a "key:value" tag (e.g. "2" for "version:2"), or
+     * the entire tag if it has no key
+     * @param tag the (normalized) tag
+     * @return the value of the tag
+     */
+    public static String value(String tag) {
+        return tag.substring(tag.indexOf(':') + 1);
+    }
+
     /**
      * Normalizes an entire collection of tags, preserving order
      * @param tags the tags to normalize
@@ -0,0 +1,110 @@
+package com.martiansoftware.martifacts.orient;
+
+import com.martiansoftware.martifacts.model.Query;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory trigram index of (lowercase) artifact names, used to narrow name
+ * globs like "*release*.tar.gz" to a handful of candidates before the glob
+ * itself is applied.
+ *
+ * Each trigram maps to the ordinals (see Ordinals) of the artifacts whose
+ * names contain it.  Artifact names never change, so entries are only ever
+ * added.
+ *
+ * @author mlamb
+ */
+class NameIndex {
+
+    private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+    private final Ordinals _ordinals;
+    private final List<String> _names = new java.util.ArrayList<>();  // lowercase artifact name by ordinal
+    private final Map<String, OrdinalSet> _postings = new java.util.HashMap<>();
+    private int _size = 0;
+
+    NameIndex(Ordinals ordinals) { _ordinals = ordinals; }
+
+    /**
+     * Adds an artifact to the index
+     * @param id the uuid of the artifact
+     * @param name the name of the artifact
+     */
+    void put(String id, String name) {
+        String lname = name.toLowerCase();
+        int ordinal = _ordinals.of(id);
+        _lock.writeLock().lock();
+        try {
+            while (_names.size() <= ordinal) _names.add(null);
+            if (_names.set(ordinal, lname) == null) ++_size;
+            for (String t : trigrams(lname)) _postings.computeIfAbsent(t, k -> new OrdinalSet()).add(ordinal);
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        _lock.readLock().lock();
+        try {
+            return _size;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the uuids of all artifacts whose names match the specified glob
+     * (case-insensitive, with special characters * and ?), if the glob contains
+     * enough literal text to narrow the search with trigrams.  If it doesn't
+     * (e.g. "a*"), or if more than maxResults artifacts match, the search is
+     * better left to the database and nothing is returned.
+     *
+     * @param glob the glob to match
+     * @param maxResults the maximum number of uuids to return
+     * @return the uuids of all artifacts whose names match the glob, if the index can help
+     */
+    Optional<List<String>> find(String glob, int maxResults) {
+        String lglob = glob.toLowerCase();
+        Set<String> trigrams = new java.util.HashSet<>();
+        for (String literal : lglob.split("[*?]")) trigrams.addAll(trigrams(literal));
+        if (trigrams.isEmpty()) return Optional.empty();
+
+        Pattern p = Query.globPattern(lglob);
+        List<String> result = new java.util.ArrayList<>();
+        _lock.readLock().lock();
+        try {
+            // intersect starting with the rarest trigram so the candidate list shrinks as fast as possible
+            List<OrdinalSet> sets = new java.util.ArrayList<>();
+            for (String t : trigrams) {
+                OrdinalSet os = _postings.get(t);
+                if (os == null) return Optional.of(Collections.emptyList());
+                sets.add(os);
+            }
+            sets.sort((a, b) -> Integer.compare(a.size(), b.size()));
+            int[] candidates = sets.get(0).toArray();
+            for (int i = 1; i < sets.size() && candidates.length > 0; ++i) candidates = sets.get(i).intersect(candidates);
+
+            for (int ordinal : candidates) {
+                if (p.matcher(_names.get(ordinal)).matches()) {
+                    if (result.size() == maxResults) return Optional.empty();
+                    result.add(_ordinals.id(ordinal));
+                }
+            }
+        } finally {
+            _lock.readLock().unlock();
+        }
+        return Optional.of(Collections.unmodifiableList(result));
+    }
+
+    private static Set<String> trigrams(String s) {
+        Set<String> result = new java.util.HashSet<>();
+        for (int i = 0; i + 3 <= s.length(); ++i) result.add(s.substring(i, i + 3));
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package com.martiansoftware.martifacts.orient;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A compact, sorted set of artifact ordinals (see Ordinals), backed by an
+ * int array.  Not thread safe; owners are responsible for locking.
+ *
+ * @author mlamb
+ */
+class OrdinalSet {
+
+    private int[] _ordinals = new int[4];
+    private int _size = 0;
+
+    void add(int ordinal) {
+        // new artifacts get the highest ordinals, so this is usually an append
+        if (_size > 0 && _ordinals[_size - 1] >= ordinal) {
+            int i = Arrays.binarySearch(_ordinals, 0, _size, ordinal);
+            if (i >= 0) return;
+            insertAt(-i - 1, ordinal);
+        } else insertAt(_size, ordinal);
+    }
+
+    private void insertAt(int i, int ordinal) {
+        if (_size == _ordinals.length) _ordinals = Arrays.copyOf(_ordinals, _size * 2);
+        System.arraycopy(_ordinals, i, _ordinals, i + 1, _size - i);
+        _ordinals[i] = ordinal;
+        ++_size;
+    }
+
+    void remove(int ordinal) {
+        int i = Arrays.binarySearch(_ordinals, 0, _size, ordinal);
+        if (i < 0) return;
+        System.arraycopy(_ordinals, i + 1, _ordinals, i, _size - i - 1);
+        --_size;
+    }
+
+    boolean contains(int ordinal) { return Arrays.binarySearch(_ordinals, 0, _size, ordinal) >= 0; }
+
+    int size() { return _size; }
+
+    boolean isEmpty() { return _size == 0; }
+
+    int[] toArray() { return Arrays.copyOf(_ordinals, _size); }
+
+    /**
+     * Returns the (ascending) candidates that are also in this set.  Cost is
+     * proportional to the number of candidates, so intersections should start
+     * with the smallest set.
+     *
+     * @param candidates ascending ordinals
+     * @return the candidates that are also in this set
+     */
+    int[] intersect(int[] candidates) {
+        int[] result = new int[Math.min(_size, candidates.length)];
+        int n = 0;
+        for (int c : candidates) if (contains(c)) result[n++] = c;
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Counts the (ascending) candidates that are also in this set, by
+     * searching the larger of the two for each member of the smaller
+     *
+     * @param candidates ascending ordinals
+     * @return the number of candidates that are also in this set
+     */
+    int countIn(int[] candidates) {
+        int n = 0;
+        if (candidates.length <= _size) {
+            for (int c : candidates) if (contains(c)) ++n;
+        } else {
+            for (int i = 0; i < _size; ++i) if (Arrays.binarySearch(candidates, _ordinals[i]) >= 0) ++n;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the union of the specified sets
+     * @param sets the sets to combine
+     * @return the union of the specified sets
+     */
+    static OrdinalSet union(Collection<OrdinalSet> sets) {
+        OrdinalSet result = new OrdinalSet();
+        int[] all = sets.stream().flatMapToInt(s -> Arrays.stream(s._ordinals, 0, s._size)).sorted().distinct().toArray();
+        if (all.length > 0) {
+            result._ordinals = all;
+            result._size = all.length;
+        }
+        return result;
+    }
+}
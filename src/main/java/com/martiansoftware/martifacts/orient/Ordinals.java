@@ -0,0 +1,40 @@
+package com.martiansoftware.martifacts.orient;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns small, dense integer ordinals to artifact uuids (in the order they
+ * are first seen) for use by the in-memory indexes, and maps them back.
+ *
+ * @author mlamb
+ */
+class Ordinals {
+
+    private final Map<String, Integer> _ordinals = new java.util.HashMap<>();
+    private final List<String> _ids = new java.util.ArrayList<>();
+
+    /**
+     * Returns the ordinal of the specified artifact, assigning one if necessary
+     * @param id the uuid of the artifact
+     * @return the ordinal of the artifact
+     */
+    synchronized int of(String id) {
+        Integer result = _ordinals.get(id);
+        if (result == null) {
+            result = _ids.size();
+            _ids.add(id);
+            _ordinals.put(id, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the uuid of the artifact with the specified ordinal
+     * @param ordinal the ordinal of the artifact
+     * @return the uuid of the artifact
+     */
+    synchronized String id(int ordinal) { return _ids.get(ordinal); }
+
+    synchronized int size() { return _ids.size(); }
+}
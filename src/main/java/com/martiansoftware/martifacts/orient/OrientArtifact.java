@@ -6,6 +6,7 @@ import com.orientechnologies.orient.core.db.record.OIdentifiable;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
@@ -23,7 +24,7 @@ public class OrientArtifact implements Artifact {
     
     private final OrientArtifactStore _store;
     private final OrientBackend _backend;
-    private final ODocument _doc;
+    private volatile ODocument _doc; // replaced by the updated copy after tagging
 
     OrientArtifact(OrientArtifactStore store, OrientBackend backend, ODocument doc) {
         _store = store;
@@ -39,7 +40,7 @@ public class OrientArtifact implements Artifact {
     @Override public Date timeAdded() { return _doc.field("added"); }
 
     @Override public SortedSet<String> tags() {
-        return _backend.tx(() -> {
+        return _backend.noTx(() -> {
             Set<OIdentifiable> tagdocs = _doc.field("tags");
             return tagdocs
                 .stream()
@@ -50,12 +51,12 @@ public class OrientArtifact implements Artifact {
     }
 
     @Override public OrientArtifact tag(Collection<String> tags) {
-        _backend.addTagsToArtifactDoc(_doc, tags);
+        _doc = _backend.addTagsToArtifactDoc(_doc, tags);
         return this;
     }
 
     @Override public OrientArtifact untag(Collection<String> tags) {
-        _backend.removeTagsFromArtifact(_doc, tags);
+        _doc = _backend.removeTagsFromArtifact(_doc, tags);
         return this;
     }
     
@@ -64,6 +65,10 @@ public class OrientArtifact implements Artifact {
         if (!oi.isPresent()) throw new IOException("No InputStream available for Artifact!");
         return oi.get();
     }
+
+    @Override public Optional<FileChannel> gzipChannel() throws IOException {
+        return _store.getGzipChannelForHash(hash());
+    }
         
     @Override public String toString() {
         SortedSet tags = tags();
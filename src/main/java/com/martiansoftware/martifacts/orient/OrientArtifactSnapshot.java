@@ -0,0 +1,97 @@
+package com.martiansoftware.martifacts.orient;
+
+import com.martiansoftware.martifacts.model.Artifact;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable, detached copy of an Artifact, read in its entirety (tag names
+ * included) from a single projection query row.  Unlike OrientArtifact, reading
+ * a snapshot never touches the database, which makes it suitable for search
+ * results and listings.
+ *
+ * Tagging or untagging a snapshot applies the change to the stored Artifact
+ * and returns the live, updated Artifact; the snapshot itself never changes.
+ *
+ * @author mlamb
+ */
+class OrientArtifactSnapshot implements Artifact {
+
+    /**
+     * The projection to select from the Artifact class to read snapshots
+     */
+    static final String PROJECTION = "uuid, name, sha1, size, time, added, tags.name as tagnames";
+
+    private final OrientArtifactStore _store;
+    private final String _id, _name, _hash;
+    private final long _size;
+    private final Date _time, _added;
+    private final SortedSet<String> _tags;
+
+    OrientArtifactSnapshot(OrientArtifactStore store, ODocument row) {
+        _store = store;
+        _id = row.field("uuid");
+        _name = row.field("name");
+        _hash = row.field("sha1");
+        _size = row.field("size");
+        _time = row.field("time");
+        _added = row.field("added");
+        _tags = Collections.unmodifiableSortedSet(tagNames(row.field("tagnames")));
+    }
+
+    // depending on the number of tags, a projected linkset field might come back as a collection, a single value, or nothing
+    static SortedSet<String> tagNames(Object o) {
+        SortedSet<String> result = new TreeSet<>();
+        if (o instanceof Iterable) {
+            for (Object t : (Iterable) o) if (t != null) result.add(t.toString());
+        } else if (o != null) {
+            result.add(o.toString());
+        }
+        return result;
+    }
+
+    @Override public String id() { return _id; }
+    @Override public String name() { return _name; }
+    @Override public String hash() { return _hash; }
+    @Override public long size() { return _size; }
+    @Override public Date time() { return _time; }
+    @Override public Date timeAdded() { return _added; }
+    @Override public SortedSet<String> tags() { return _tags; }
+
+    private Artifact live() {
+        return _store.findById(_id).orElseThrow(() -> new IllegalStateException("Artifact " + _id + " no longer exists!"));
+    }
+
+    @Override public Artifact tag(Collection<String> tags) { return live().tag(tags); }
+    @Override public Artifact untag(Collection<String> tags) { return live().untag(tags); }
+
+    @Override public InputStream inputStream() throws IOException {
+        Optional<InputStream> oi = _store.getInputStreamForHash(_hash);
+        if (!oi.isPresent()) throw new IOException("No InputStream available for Artifact!");
+        return oi.get();
+    }
+
+    @Override public Optional<FileChannel> gzipChannel() throws IOException {
+        return _store.getGzipChannelForHash(_hash);
+    }
+
+    @Override public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("%s [%s] [%s]\n", getClass().getSimpleName(), name(), id()));
+        s.append(String.format("   tags: %s\n", tags().stream().collect(Collectors.joining(", "))));
+        s.append(String.format("   hash: %s\n", hash()));
+        s.append(String.format("   size: %d\n", size()));
+        s.append(String.format("   time: %s\n", time()));
+        s.append(String.format("  added: %s\n", timeAdded()));
+        return s.toString();
+    }
+}
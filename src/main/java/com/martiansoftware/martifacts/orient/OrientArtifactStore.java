@@ -1,51 +1,112 @@
 package com.martiansoftware.martifacts.orient;
 
-import com.martiansoftware.blobstore.Blob;
-import com.martiansoftware.blobstore.BlobStore;
-import com.martiansoftware.blobstore.Ref;
+import com.martiansoftware.martifacts.blobs.Blobs;
 import com.martiansoftware.martifacts.model.Artifact;
 import com.martiansoftware.martifacts.model.ArtifactStore;
+import com.martiansoftware.martifacts.model.Cursor;
+import com.martiansoftware.martifacts.model.NewArtifact;
+import com.martiansoftware.martifacts.model.Page;
+import com.martiansoftware.martifacts.model.Tags;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.SortedMap;
 import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 /**
  *
  * @author mlamb
  */
-public class OrientArtifactStore implements ArtifactStore {
+public class OrientArtifactStore implements ArtifactStore, Closeable {
     
+    private static final int QUERY_CACHE_CAPACITY = 256;
+    private static final int MAX_CACHED_RESULT_SIZE = 10000;
+    private static final int MAX_CACHED_ROWS = 50000; // across all cached results
+
     private final OrientBackend _backend;
-    private final BlobStore _blobstore;
+    private final Blobs _blobs;
+    private final QueryCache _queryCache;
     
     public OrientArtifactStore(Path p) throws IOException {
+        this(p, false);
+    }
+
+    /**
+     * Opens (or creates) an OrientArtifactStore in the specified directory
+     * @param p the directory containing the store
+     * @param compressBlobs if true, text-like artifact data is compressed at rest
+     * @throws IOException 
+     */
+    public OrientArtifactStore(Path p, boolean compressBlobs) throws IOException {
         _backend = new OrientBackend(p.resolve("db"));
-        _blobstore = new BlobStore(p.resolve("blobs"));
+        _blobs = new Blobs(p, compressBlobs);
+        _queryCache = new QueryCache(QUERY_CACHE_CAPACITY, MAX_CACHED_RESULT_SIZE, MAX_CACHED_ROWS, _backend::generation);
+    }
+
+    // queries are cached by their distinct, sorted, lowercase terms (the order of terms doesn't matter to a
+    // search), plus today's date since date terms can be relative to it
+    private static String normalize(String query) {
+        return LocalDate.now() + Arrays.stream(query.toLowerCase().trim().split("\\s+"))
+                                        .filter(t -> !t.isEmpty())
+                                        .sorted()
+                                        .distinct()
+                                        .map(t -> " " + t)
+                                        .collect(Collectors.joining());
+    }
+
+    @Override public Map<String, Object> stats() {
+        Map<String, Object> result = new java.util.TreeMap<>(_queryCache.stats());
+        result.putAll(_backend.writeStats());
+        result.put("generation", _backend.generation());
+        return Collections.unmodifiableMap(result);
     }
 
     @Override public SortedSet<String> tags() {
-        return Collections.unmodifiableSortedSet(
-            _backend.tagDocs().stream().map(doc -> (String) doc.field("name")).collect(Collectors.toCollection(TreeSet::new))
-        );
+        return _backend.tagNames();
     }
 
     @Override public SortedMap<String, Long> tagStats() {
-        SortedMap<String, Long> result = new java.util.TreeMap<>();
-        _backend.tagStats().forEach(doc -> result.put(doc.field("name"), doc.field("count")));
-        return Collections.unmodifiableSortedMap(result);
+        return _queryCache.get("tagstats", () -> {
+            SortedMap<String, Long> result = new java.util.TreeMap<>();
+            _backend.tagStats().forEach(doc -> result.put(doc.field("name"), ((Number) doc.field("count")).longValue()));
+            return Collections.unmodifiableSortedMap(result);
+        });
+    }
+
+    @Override public SortedMap<String, Long> facets(String searchQuery) {
+        return _queryCache.get("facets:" + normalize(searchQuery), () -> Collections.unmodifiableSortedMap(_backend.countTagsByQuery(searchQuery)));
+    }
+
+    /**
+     * Recomputes the tag counts reported by tagStats() from the stored
+     * artifacts, in case they have drifted
+     */
+    public void rebuildTagCounts() {
+        _backend.rebuildTagCounts();
+    }
+
+    /**
+     * Waits for pending writes and closes the database
+     */
+    @Override public void close() {
+        _backend.close();
     }
     
-    private Artifact create(String name, Date fileTime, Blob blob, Collection<String> tags) throws IOException {
-        return new OrientArtifact(this, _backend, _backend.createArtifactDoc(name, blob.ref().toString(), blob.size(), fileTime, tags));
+    private Artifact create(String name, Date fileTime, Blobs.Stored blob, Collection<String> tags) throws IOException {
+        return new OrientArtifact(this, _backend, _backend.createArtifactDoc(name, blob.hash, blob.size, fileTime, tags));
     }
         
     @Override
@@ -53,7 +114,7 @@ public class OrientArtifactStore implements ArtifactStore {
         if (!Files.isRegularFile(data)) throw new IOException("Cannot add " + data + ": must be a regular file");
         return create(name,
                         new Date(Files.getLastModifiedTime(data).toMillis()),
-                        _blobstore.add(data.toFile()),
+                        _blobs.add(data),
                         tags);
     }
 
@@ -61,20 +122,53 @@ public class OrientArtifactStore implements ArtifactStore {
     public Artifact create(String name, InputStream data, Date fileTime, Collection<String> tags) throws IOException {
         return create(name,
                         fileTime,
-                        _blobstore.add(data),
+                        _blobs.add(data),
                         tags);
     }
 
     @Override
-    public Collection<Artifact> findByTags(Collection<String> tags) {
+    public String store(InputStream data) throws IOException {
+        return _blobs.add(data).hash;
+    }
+
+    @Override
+    public Optional<Artifact> createFromHash(String name, String hash, Date fileTime, Collection<String> tags) throws IOException {
+        Optional<Blobs.Stored> blob = _blobs.get(hash);
+        return blob.isPresent() ? Optional.of(create(name, fileTime, blob.get(), tags)) : Optional.empty();
+    }
+
+    @Override
+    public List<Artifact> createAll(List<NewArtifact> artifacts) throws IOException {
+        Map<String, Long> sizes = new java.util.HashMap<>();
+        for (NewArtifact a : artifacts) {
+            if (sizes.containsKey(a.hash())) continue;
+            Optional<Blobs.Stored> blob = _blobs.get(a.hash());
+            if (!blob.isPresent()) throw new IOException("No data stored for hash " + a.hash());
+            sizes.put(a.hash(), blob.get().size);
+        }
         return Collections.unmodifiableList(
-                    _backend.findArtifactDocsWithAllTags(tags)
+                    _backend.createArtifactDocs(artifacts, sizes)
                     .stream()
                     .map(doc -> new OrientArtifact(this, _backend, doc))
                     .collect(Collectors.toList())
         );
     }
 
+    @Override
+    public Optional<Long> dataSize(String hash) throws IOException {
+        return _blobs.get(hash).map(blob -> blob.size);
+    }
+
+    @Override
+    public Collection<Artifact> findByTags(Collection<String> tags) {
+        return _queryCache.get("tags:" + normalize(String.join(" ", Tags.normalize(tags))), () -> Collections.unmodifiableList(
+                    _backend.findArtifactRowsWithAllTags(tags)
+                    .stream()
+                    .map(doc -> new OrientArtifactSnapshot(this, doc))
+                    .collect(Collectors.toList())
+        ));
+    }
+
     @Override
     public Optional<Artifact> findById(String id) {
         return _backend.findArtifactDocWithId(id).map(doc -> new OrientArtifact(this, _backend, doc));
@@ -82,35 +176,54 @@ public class OrientArtifactStore implements ArtifactStore {
 
     @Override
     public Collection<Artifact> findByHash(String hash) {
-        return Collections.unmodifiableList(
-                    _backend.findArtifactDocsWithHash(hash)
+        return _queryCache.get("hash:" + hash.toLowerCase(), () -> Collections.unmodifiableList(
+                    _backend.findArtifactRowsWithHash(hash)
                     .stream()
-                    .map(doc -> new OrientArtifact(this, _backend, doc))
+                    .map(doc -> new OrientArtifactSnapshot(this, doc))
                     .collect(Collectors.toList())
-        );
+        ));
     }
 
     @Override public Collection<Artifact> findByQuery(String query) {        
-        return Collections.unmodifiableList(
-                _backend.findArtifactDocsByQuery(query)
+        return _queryCache.get("query:" + normalize(query), () -> Collections.unmodifiableList(
+                _backend.findArtifactRowsByQuery(query)
                 .stream()
-                .map(doc -> new OrientArtifact(this, _backend, doc))
+                .map(doc -> new OrientArtifactSnapshot(this, doc))
                 .collect(Collectors.toList())
-        );
+        ));
+    }
+    
+    @Override public Page findByQuery(String query, Optional<Cursor> after, int limit) {
+        String key = String.format("page:%s:%d:%s", after.map(Cursor::toString).orElse(""), limit, normalize(query));
+        return _queryCache.get(key, () -> new Page(
+                _backend.findArtifactRowsByQuery(query, after, limit)
+                .stream()
+                .map(doc -> new OrientArtifactSnapshot(this, doc))
+                .collect(Collectors.toList()),
+                limit
+        ));
+    }
+    
+    @Override public long countByQuery(String query) {
+        return _queryCache.get("count:" + normalize(query), () -> _backend.countArtifactsByQuery(query));
     }
     
     @Override
     public Collection<Artifact> all() {
-        return Collections.unmodifiableList(
-                    _backend.all()
+        return _queryCache.get("all", () -> Collections.unmodifiableList(
+                    _backend.allArtifactRows()
                     .stream()
-                    .map(doc -> new OrientArtifact(this, _backend, doc))
+                    .map(doc -> new OrientArtifactSnapshot(this, doc))
                     .collect(Collectors.toList())
-        );
+        ));
     }
     
     Optional<InputStream> getInputStreamForHash(String hash) throws IOException {
-        Blob blob = _blobstore.get(new Ref(hash));
-        return (blob == null) ? Optional.empty() : Optional.of(blob.inputStream());
+        return _blobs.inputStream(hash);
+    }
+    
+    Optional<FileChannel> getGzipChannelForHash(String hash) throws IOException {
+        Optional<Path> gz = _blobs.gzipFile(hash);
+        return gz.isPresent() ? Optional.of(FileChannel.open(gz.get(), StandardOpenOption.READ)) : Optional.empty();
     }
 }
@@ -1,20 +1,33 @@
 package com.martiansoftware.martifacts.orient;
 
+import com.martiansoftware.martifacts.model.Cursor;
+import com.martiansoftware.martifacts.model.NewArtifact;
 import com.martiansoftware.martifacts.model.Tags;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.exception.OConcurrentModificationException;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.storage.ORecordDuplicatedException;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Collections;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
 import java.util.stream.Collectors;
 
 import static com.martiansoftware.martifacts.orient.OrientSupport.db;
 import com.orientechnologies.orient.core.id.ORID;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +39,18 @@ import org.slf4j.LoggerFactory;
 class OrientBackend extends OrientSupport {
 
     private static final Logger log = LoggerFactory.getLogger(OrientBackend.class);
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+    private static final long BACKOFF_MILLIS = 5; // first retry waits up to this long, doubling with each attempt
+    private static final int MAX_INDEX_MATCHES = 1000; // beyond this many matches, in-memory index results are left to the database
+    private final TagCache _tagCache = new TagCache();
+    private final Ordinals _ordinals = new Ordinals();
+    private final NameIndex _nameIndex = new NameIndex(_ordinals);
+    private final TagIndex _tagIndex = new TagIndex();
+    private final AtomicLong _generation = new AtomicLong(); // incremented after every write
+    private static final long WRITE_WINDOW_MILLIS = 2;
+    private static final int MAX_WRITE_BATCH = 64;
+    private final WriteQueue _writes = new WriteQueue(this::commit, WRITE_WINDOW_MILLIS, MAX_WRITE_BATCH);
+    private final AtomicLong _writeRetries = new AtomicLong(), _writeRetryFailures = new AtomicLong();
     
     // TODO: fewer string magic text.  maybe a template processor inside sql
     //       calls?  need to avoid just concatenating strings.
@@ -39,7 +64,8 @@ class OrientBackend extends OrientSupport {
                 sql("create class Tag");
                 sql("create property Tag.name string");
                 sql("alter property Tag.name MANDATORY true");
-                sql("create index Tag.name NOTUNIQUE");
+                sql("create index Tag.name UNIQUE");
+                sql("create property Tag.count long"); // number of artifacts with this tag
 
                 sql("create class Artifact");
                 
@@ -55,7 +81,9 @@ class OrientBackend extends OrientSupport {
                 
                 sql("create property Artifact.size long");
                 sql("create property Artifact.time datetime");
+                sql("create index Artifact.time NOTUNIQUE");
                 sql("create property Artifact.added datetime");
+                sql("create index Artifact.added NOTUNIQUE");
                 
                 sql("create property Artifact.tags linkset Tag");
                 sql("create index Artifact.tags NOTUNIQUE");
@@ -63,38 +91,169 @@ class OrientBackend extends OrientSupport {
                 log.info("Finished defining schema.\n");
             } else log.info("Schema already defined.\n");
         });
+        migrate();
+
+        _tagCache.putAll(tagDocs());
+        log.info("Loaded {} tags.", _tagCache.names().size());
+        noTx(() -> sql("select uuid, name, tags from Artifact").forEach(this::index)); // tags are lazy links, so walk them in scope
+        log.info("Indexed {} artifacts.", _nameIndex.size());
+    }
+
+    /**
+     * Returns the write generation of the database, which changes after every
+     * write (creating, tagging, or untagging artifacts) and can be used to tell
+     * whether cached query results are still current
+     * @return the write generation of the database
+     */
+    long generation() { return _generation.get(); }
+
+    // brings databases created by earlier versions up to date with the current schema
+    private void migrate() {
+        Set<String> added = new java.util.HashSet<>();
+        noTx(() -> {
+            OClass tag = db().getMetadata().getSchema().getClass("Tag");
+            if (tag.getProperty("count") == null) {
+                log.info("Adding Tag.count");
+                sql("create property Tag.count long");
+                added.add("Tag.count");
+            }
+        });
+        noTx(() -> {
+            if (!"UNIQUE".equals(db().getMetadata().getIndexManager().getIndex("Tag.name").getType())) added.add("Tag.name");
+        });
+        if (added.contains("Tag.name")) {
+            log.info("Merging duplicate tags");
+            log.info("Merged {} duplicate tags.", dedupeTags());
+            noTx(() -> {
+                log.info("Making Tag.name unique");
+                sql("drop index Tag.name");
+                sql("create index Tag.name UNIQUE");
+            });
+        }
+        noTx(() -> {
+            OClass artifact = db().getMetadata().getSchema().getClass("Artifact");
+            for (String field : Arrays.asList("time", "added")) {
+                if (!artifact.areIndexed(field)) {
+                    log.info("Indexing Artifact.{}", field);
+                    sql(String.format("create index Artifact.%s NOTUNIQUE", field));
+                }
+            }
+        });
+        if (added.contains("Tag.count") || added.contains("Tag.name")) rebuildTagCounts();
+    }
+
+    // merges Tags sharing a name (which the NOTUNIQUE Tag.name index of earlier versions allowed under
+    // concurrent uploads) into the oldest one, relinking their Artifacts.  counts must be rebuilt afterward.
+    private int dedupeTags() {
+        return tx(() -> {
+            int merged = 0;
+            for (ODocument group : sql("select name, count(*) as count from Tag group by name")) {
+                if (((Number) group.field("count")).longValue() < 2) continue;
+                String name = group.field("name");
+                List<ODocument> tags = sql("select from Tag where name = ? order by @rid", name);
+                ORID keep = tags.get(0).getIdentity();
+                for (ODocument dup : tags.subList(1, tags.size())) {
+                    ORID dupId = dup.getIdentity();
+                    for (ODocument artifact : sql("select from Artifact where tags contains " + dupId)) {
+                        Set<OIdentifiable> tagLinks = artifact.field("tags");
+                        tagLinks.removeIf(t -> t.getIdentity().equals(dupId));
+                        tagLinks.add(keep);
+                        artifact.save();
+                    }
+                    dup.delete();
+                    ++merged;
+                }
+            }
+            commit();
+            return merged;
+        });
     }
 
     /**
-     * Returns a Tag ODocument for each (unique, normalized) tag in the specified
-     * collection, creating them as necessary
+     * Returns a Tag record for each (unique, normalized) tag in the specified
+     * collection, creating them as necessary.  Known tags come from the tag
+     * cache; only new tags touch the database.  Must be called within a
+     * transaction.
      * 
      * @param tags the tags to return or create
-     * @return the ODocuments for each (unique, normalized) requested tag
+     * @param batch the batch being written, which remembers any newly created
+     *        Tag ODocuments so they can be reused by the rest of the batch and
+     *        added to the tag cache once the transaction is committed
+     * @return the records for each (unique, normalized) requested tag, by name
      */
-    private Set<ODocument> getOrCreateTagsFor(Collection<String> tags) {
-        if (tags.isEmpty()) return Collections.EMPTY_SET;
-        Set<ODocument> result = new java.util.LinkedHashSet<>();
-        Tags.normalize(tags).stream().forEach(
-            tag -> result.add(sql("UPDATE Tag SET name = ? UPSERT RETURN AFTER @this WHERE name = ? ", tag, tag).get(0))
-        );
-        return Collections.unmodifiableSet(result);
+    private Map<String, OIdentifiable> getOrCreateTagsFor(Collection<String> tags, WriteBatch batch) {
+        if (tags.isEmpty()) return Collections.EMPTY_MAP;
+        Map<String, OIdentifiable> result = new java.util.LinkedHashMap<>();
+        for (String tag : Tags.normalize(tags)) {
+            Optional<ORID> id = _tagCache.get(tag);
+            if (id.isPresent()) {
+                result.put(tag, id.get());
+            } else if (batch.createdTag(tag) != null) {
+                result.put(tag, batch.createdTag(tag));
+            } else {
+                ODocument doc = sql("UPDATE Tag SET name = ? UPSERT RETURN AFTER @this WHERE name = ? ", tag, tag).get(0);
+                batch.tagCreated(tag, doc);
+                result.put(tag, doc);
+            }
+        }
+        return Collections.unmodifiableMap(result);
     }
 
     /**
-     * Returns a Tag ODocument for each (unique, normalized) tag in the specified
-     * collection that is defined in the database
+     * Returns the Tag record id for each (unique, normalized) tag in the specified
+     * collection that is defined in the database, including "key:value" tags
+     * whose value matches (e.g. tag "version:2" for query term "2").  Values
+     * are looked up in the tag cache's value index, so no tags are scanned.
      * 
      * @param tags the tags to return
-     * @return the ODocuments for each (unique, normalized) requested tag defined in the db
+     * @return the record ids for each (unique, normalized) requested tag defined in the db
      */
-    List<ODocument> findTagDocsFor(Collection<String> tags) {
-        return tx(() -> {
-            if (tags.isEmpty()) return Collections.EMPTY_LIST;
-            Collection<String> ntags = Tags.normalize(tags);
-            String q = "select from Tag where " + ntags.stream().map(t -> "(name = ?) OR (name like ?)").collect(Collectors.joining("OR "));            
-            return Collections.unmodifiableList(sql(q, ntags.stream().flatMap(s -> Stream.of(s, "%:" + s)))); // e.g. find tag "version:2" for query term "2"
-        });
+    List<ORID> findTagIdsFor(Collection<String> tags) {
+        if (tags.isEmpty()) return Collections.EMPTY_LIST;
+        return Collections.unmodifiableList(
+            Tags.normalize(tags).stream()
+                .flatMap(t -> _tagCache.find(t).stream())
+                .distinct()
+                .collect(Collectors.toList())
+        );
+    }
+
+    /**
+     * Returns the uuids of all Artifacts whose names match the specified glob,
+     * if the in-memory name index can narrow the search (see NameIndex)
+     * 
+     * @param glob the (case-insensitive) glob to match
+     * @return the uuids of all matching Artifacts, if the name index can help
+     */
+    Optional<List<String>> findArtifactIdsMatchingGlob(String glob) {
+        return _nameIndex.find(glob, MAX_INDEX_MATCHES);
+    }
+
+    /**
+     * Returns the uuids of all Artifacts matching ALL of the specified terms,
+     * where each term is a collection of Tag record ids, ANY of which matches
+     * (see findTagIdsFor()).  The intersection is computed by the in-memory tag
+     * index; if it contains too many Artifacts to hand to the database as a
+     * list of uuids, nothing is returned.
+     *
+     * @param terms the terms to match
+     * @return the uuids of all matching Artifacts, unless there are too many
+     */
+    Optional<List<String>> findArtifactIdsWithAllTags(List<? extends Collection<ORID>> terms) {
+        int[] ordinals = _tagIndex.findAll(terms);
+        if (ordinals.length > MAX_INDEX_MATCHES) return Optional.empty();
+        List<String> result = new java.util.ArrayList<>(ordinals.length);
+        for (int ordinal : ordinals) result.add(_ordinals.id(ordinal));
+        return Optional.of(Collections.unmodifiableList(result));
+    }
+
+    // adds a committed Artifact document (or row with uuid, name, and tags) to the in-memory indexes
+    private void index(ODocument artifactDoc) {
+        String id = artifactDoc.field("uuid");
+        _nameIndex.put(id, artifactDoc.field("name"));
+        int ordinal = _ordinals.of(id);
+        Collection<OIdentifiable> tags = artifactDoc.field("tags");
+        if (tags != null) tags.forEach(t -> _tagIndex.add(t.getIdentity().copy(), ordinal));
     }
 
     /**
@@ -103,25 +262,26 @@ class OrientBackend extends OrientSupport {
      * 
      * @param artifactDoc the doc to add the tags to
      * @param tags the tags to add
+     * @return the updated Artifact ODocument, which replaces artifactDoc
      */
-    void addTagsToArtifactDoc(ODocument artifactDoc, Collection<String> tags) {
-        if (tags.isEmpty()) return;
+    ODocument addTagsToArtifactDoc(ODocument artifactDoc, Collection<String> tags) {
+        if (tags.isEmpty()) return artifactDoc;
         Collection<String> ntags = Tags.normalize(tags);
-        tx(() -> {
-            Set<ODocument> tagLinks = artifactDoc.field("tags");
-            getOrCreateTagsFor(ntags).forEach(d -> tagLinks.add(d));
-            artifactDoc.save();
-        });
-    }
-
-    void deleteUnusedTags() {
-        tx(() -> {
-            // this seems much more complicated than it needs to be.  would prefer a single sql statement
-            Set<ORID> usedTags = new java.util.HashSet<>();
-            sql("select tag from (select tags as tag from artifact unwind tag) group by tag")
-                .forEach(d -> usedTags.add(((ODocument) d.field("tag")).getIdentity()));
-            sql("select from tag")
-                .forEach(d -> { if (!usedTags.contains(d.getIdentity())) d.delete(); });
+        return _writes.run(batch -> {
+            ODocument doc = reload(artifactDoc);
+            Set<OIdentifiable> tagLinks = doc.field("tags");
+            Set<ORID> linked = tagLinks.stream().map(OIdentifiable::getIdentity).collect(Collectors.toSet());
+            List<OIdentifiable> added = new java.util.ArrayList<>();
+            for (OIdentifiable tag : getOrCreateTagsFor(ntags, batch).values()) {
+                if (linked.contains(tag.getIdentity())) continue;
+                tagLinks.add(tag);
+                batch.adjustTagCount(tag, 1L);
+                added.add(tag);
+            }
+            doc.save();
+            int ordinal = _ordinals.of(doc.field("uuid"));
+            batch.afterCommit(() -> added.forEach(t -> _tagIndex.add(t.getIdentity().copy(), ordinal)));
+            return doc;
         });
     }
 
@@ -131,16 +291,189 @@ class OrientBackend extends OrientSupport {
      * 
      * @param artifactDoc the doc to remove the tags from
      * @param tags the tags to remove
+     * @return the updated Artifact ODocument, which replaces artifactDoc
      */
-    void removeTagsFromArtifact(ODocument artifact, Collection<String> tags) {
-        if (tags.isEmpty()) return;
+    ODocument removeTagsFromArtifact(ODocument artifactDoc, Collection<String> tags) {
+        if (tags.isEmpty()) return artifactDoc;
         Collection<String> ntags = Tags.normalize(tags);
+        return _writes.run(batch -> {
+            ODocument doc = reload(artifactDoc);
+            Set<OIdentifiable> tagLinks = doc.field("tags");
+            Set<ORID> linked = tagLinks.stream().map(OIdentifiable::getIdentity).collect(Collectors.toSet());
+            List<ORID> removed = findTagIdsFor(ntags).stream().filter(linked::contains).collect(Collectors.toList());
+            tagLinks.removeAll(removed);
+            removed.forEach(id -> batch.adjustTagCount(id, -1L));
+            doc.save();
+            int ordinal = _ordinals.of(doc.field("uuid"));
+            batch.afterCommit(() -> removed.forEach(id -> _tagIndex.remove(id, ordinal)));
+            return doc;
+        });
+    }
+
+    // must be called within a transaction.  writes work on a fresh copy of the artifact, since a stale
+    // copy would fail its whole batch, and a copy modified by a failed batch would be wrong on retry.
+    private static ODocument reload(ODocument artifactDoc) {
+        return db().load(artifactDoc.getIdentity(), null, true);
+    }
+
+    /**
+     * Runs a batch of writes from the WriteQueue, and the tag count changes
+     * they cause, in a single transaction, then (once committed) updates the
+     * tag cache and in-memory indexes.
+     * Only failures of the transaction itself are thrown.
+     * 
+     * @param writes the writes to run
+     * @param retry if false, the writes are only tried once (see WriteQueue.Committer)
+     * @return the result of each write, in order
+     */
+    private List<Object> commit(List<WriteQueue.Write<?>> writes, boolean retry) {
+        // conflicts (e.g. with another process creating the same tag) are transient, so they're retried.  this
+        // stalls every writer, so writes already retried with their batch don't wait again when tried alone.
+        int maxAttempts = retry ? MAX_WRITE_ATTEMPTS : 1;
+        for (int attempt = 1; ; ++attempt) {
+            try {
+                return commitOnce(writes);
+            } catch (OConcurrentModificationException | ORecordDuplicatedException e) {
+                if (attempt >= maxAttempts) {
+                    _writeRetryFailures.incrementAndGet();
+                    throw e;
+                }
+                _writeRetries.incrementAndGet();
+                backoff(attempt);
+            }
+        }
+    }
+
+    private List<Object> commitOnce(List<WriteQueue.Write<?>> writes) {
+        WriteBatch batch = new WriteBatch();
+        List<Object> results = tx(() -> {
+            try {
+                List<Object> r = new java.util.ArrayList<>(writes.size());
+                for (WriteQueue.Write<?> w : writes) r.add(w.apply(batch));
+                applyTagCounts(batch);
+                commit();
+                return r;
+            } catch (RuntimeException e) {
+                rollback();
+                throw e;
+            }
+        });
+        afterCommit(batch);
+        return results;
+    }
+
+    // the batch is durable once committed, so nothing here may fail it (the WriteQueue would run its writes
+    // again).  failures are logged instead; at worst, in-memory state is incomplete until the next start.
+    private void afterCommit(WriteBatch batch) {
+        try {
+            _tagCache.putAll(batch.createdTags());
+            batch.deletedTags().forEach(_tagCache::remove);
+            batch.committed();
+        } catch (RuntimeException e) {
+            log.error("Unable to finish updating after a commit; restart to rebuild in-memory indexes", e);
+        } finally {
+            _generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Commits any queued writes and closes the database
+     */
+    @Override public void close() {
+        try {
+            _writes.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        super.close();
+    }
+
+    // waits a random time of up to BACKOFF_MILLIS * 2^(attempt - 1), so that colliding writers spread out
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(BACKOFF_MILLIS << Math.min(attempt - 1, 10)) + 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns statistics about writes (see WriteQueue) and about retries after
+     * write conflicts
+     * @return write statistics, by name
+     */
+    Map<String, Object> writeStats() {
+        Map<String, Object> result = new java.util.TreeMap<>(_writes.stats());
+        result.put("retries.writes", _writeRetries.get());
+        result.put("retries.writes.failed", _writeRetryFailures.get());
+        return result;
+    }
+
+    /**
+     * Applies the changes to tag usage counts made by a batch of writes, in
+     * the same transaction as the writes, so the counts commit (or don't)
+     * together with the changes that caused them.  Tags created by the batch
+     * are counted on their new ODocuments.  Only the WriteQueue's writer
+     * changes counts, so there is nothing to contend with.
+     *
+     * Tags whose count drops to zero are deleted in the same transaction, so
+     * only the tags touched by a change are ever checked for removal.  They
+     * are removed from the tag cache as soon as the transaction commits, on
+     * the writer thread, so no later write can link to a deleted Tag.  Must
+     * be called within a transaction.
+     *
+     * @param batch the batch being written
+     */
+    private void applyTagCounts(WriteBatch batch) {
+        batch.tagCountDeltas().forEach((t, delta) -> {
+            ODocument tag = (t instanceof ODocument) ? (ODocument) t : db().load(t.getIdentity(), null, true);
+            if (tag == null) return;
+            long count = countOf(tag) + delta;
+            // double check before deleting, in case the stored count had drifted.  the tag index holds every
+            // earlier batch (the writer updates it before starting the next one), so only this batch's
+            // change needs to be added, and nothing depends on what sql sees of the open transaction.
+            if (count <= 0) count = _tagIndex.count(tag.getIdentity()) + delta;
+            if (count > 0) {
+                tag.field("count", count).save();
+            } else {
+                batch.tagDeleted(tag.field("name"));
+                tag.delete();
+            }
+        });
+    }
+
+    private static long countOf(ODocument tag) {
+        Number n = tag.field("count");
+        return n == null ? 0 : n.longValue();
+    }
+
+    /**
+     * Recomputes the usage count of every Tag from the Artifacts that link to
+     * it, deleting any Tags that are no longer used.  Counts are normally
+     * maintained as artifacts are created, tagged, and untagged; this repairs
+     * them if they ever drift.
+     */
+    public void rebuildTagCounts() {
+        List<String> deleted = new java.util.ArrayList<>();
         tx(() -> {
-            Set<ODocument> tagLinks = artifact.field("tags");
-            findTagDocsFor(ntags).forEach(d -> tagLinks.remove(d));
-            artifact.save();
-            deleteUnusedTags();
+            Map<String, Long> counts = new java.util.HashMap<>();
+            sql("select count(*), name from (select expand(tags) from artifact) group by name")
+                .forEach(d -> counts.put(d.field("name"), ((Number) d.field("count")).longValue()));
+            sql("select from Tag")
+                .forEach(d -> {
+                    String name = d.field("name");
+                    if (counts.containsKey(name)) {
+                        d.field("count", counts.get(name)).save();
+                    } else {
+                        deleted.add(name);
+                        d.delete();
+                    }
+                });
+            commit();
         });
+        deleted.forEach(_tagCache::remove);
+        _generation.incrementAndGet();
+        log.info("Rebuilt tag counts; deleted {} unused tags.", deleted.size());
     }
 //  ----------------------------------------------------------------------------
 
@@ -149,15 +482,27 @@ class OrientBackend extends OrientSupport {
      * @return all Tag ODocuments
      */
     public List<ODocument> tagDocs() {
-        return Collections.unmodifiableList(tx(() -> sql("select from Tag")));
+        return Collections.unmodifiableList(noTx(() -> sql("select from Tag")));
+    }
+
+    /**
+     * Returns the names of all Tags
+     * @return the names of all Tags
+     */
+    public SortedSet<String> tagNames() {
+        return _tagCache.names();
     }
     
     /**
-     * Returns tags and tag counts
+     * Returns the Tags in use, each with its "name" and (maintained) usage "count"
      * @return tags and tag counts
      */
     public List<ODocument> tagStats() {
-        return Collections.unmodifiableList(tx(() -> sql("select count(*), name from (select expand(tags) from artifact) group by name;")));
+        return Collections.unmodifiableList(
+            tagDocs().stream()
+                .filter(d -> countOf(d) > 0)
+                .collect(Collectors.toList())
+        );
     }
     
     /**
@@ -172,74 +517,188 @@ class OrientBackend extends OrientSupport {
      * @return the newly created Artifact ODocument
      */
     public ODocument createArtifactDoc(String name, String sha1, long size, Date fileTime, Collection<String> tags) {
-        return tx(() -> {
-            ODocument artifact = new ODocument("Artifact");
-            artifact.field("uuid", UUID.randomUUID().toString());
-            artifact.field("name", name);
-            artifact.field("sha1", sha1);
-            artifact.field("size", size);
-            artifact.field("time", fileTime);
-            artifact.field("added", new Date());
-            artifact.field("tags", getOrCreateTagsFor(tags));
-            artifact.save();
-            return artifact;
+        return _writes.run(batch -> {
+            Set<OIdentifiable> tagLinks = new java.util.LinkedHashSet<>(getOrCreateTagsFor(tags, batch).values());
+            tagLinks.forEach(t -> batch.adjustTagCount(t, 1L));
+            ODocument result = newArtifactDoc(name, sha1, size, fileTime, tagLinks);
+            batch.afterCommit(() -> index(result));
+            return result;
         });
     }
 
     /**
-     * Returns all Artifact ODocuments that contain ALL tags in the specified
-     * collection
+     * Creates several new Artifact ODocuments in the same transaction.  Tags
+     * shared by the new artifacts are only looked up or created once.
      * 
-     * @param tags the tags for which we want to find all associated Artifact
-     *             ODocuments (only those with ALL specified tags are returned)
-     * @return the Artifact ODocuments with all of the specified tags
+     * @param artifacts the artifacts to create
+     * @param sizes the size, in bytes, of the data for each artifact hash
+     * @return the newly created Artifact ODocuments, in the same order as requested
      */
-    public List<ODocument> findArtifactDocsWithAllTags(Collection<String> tags) {
-        return tx(() -> {
-            Collection<String> ntags = Tags.normalize(tags);
-            List<ODocument> tagDocs = findTagDocsFor(tags);
-            if (tagDocs.isEmpty()) return Collections.EMPTY_LIST;
-            String q = "select from Artifact where " + tagDocs.stream().map(t -> "tags contains " + t.getIdentity() + " ").collect(Collectors.joining("AND "));
-            return Collections.unmodifiableList(sql(q, (Object[]) ntags.toArray(new String[ntags.size()])));
+    public List<ODocument> createArtifactDocs(List<NewArtifact> artifacts, Map<String, Long> sizes) {
+        return _writes.run(batch -> {
+            Set<String> allTags = new java.util.LinkedHashSet<>();
+            artifacts.forEach(a -> allTags.addAll(a.tags()));
+            Map<String, OIdentifiable> tagIds = getOrCreateTagsFor(allTags, batch);
+
+            List<ODocument> docs = new java.util.ArrayList<>(artifacts.size());
+            for (NewArtifact a : artifacts) {
+                Set<OIdentifiable> tags = a.tags().stream().map(tagIds::get).collect(Collectors.toCollection(java.util.LinkedHashSet::new));
+                tags.forEach(t -> batch.adjustTagCount(t, 1L));
+                docs.add(newArtifactDoc(a.name(), a.hash(), sizes.get(a.hash()), a.fileTime(), tags));
+            }
+            batch.afterCommit(() -> docs.forEach(this::index));
+            return Collections.unmodifiableList(docs);
         });
     }
 
+    // must be called within a transaction
+    private ODocument newArtifactDoc(String name, String sha1, long size, Date fileTime, Set<OIdentifiable> tagDocs) {
+        ODocument artifact = new ODocument("Artifact");
+        artifact.field("uuid", UUID.randomUUID().toString());
+        artifact.field("name", name);
+        artifact.field("sha1", sha1);
+        artifact.field("size", size);
+        artifact.field("time", fileTime);
+        artifact.field("added", new Date());
+        artifact.field("tags", tagDocs);
+        artifact.save();
+        return artifact;
+    }
+
+    /**
+     * Returns snapshot rows (see OrientArtifactSnapshot) for all Artifacts that
+     * contain ALL tags in the specified collection
+     * 
+     * @param tags the tags for which we want to find all associated Artifacts
+     *             (only those with ALL specified tags are returned)
+     * @return snapshot rows for the Artifacts with all of the specified tags
+     */
+    public List<ODocument> findArtifactRowsWithAllTags(Collection<String> tags) {
+        Collection<String> ntags = Tags.normalize(tags);
+        if (ntags.isEmpty()) return Collections.EMPTY_LIST;
+        return findArtifactRowsByQuery(ntags.stream().map(t -> "tag:" + t).collect(Collectors.joining(" ")));
+    }
+
     /**
-     * Returns all Artifact ODocuments sorted by time
-     * @return all Artifact ODocuments sorted by time
+     * Returns snapshot rows for all Artifacts sorted by time
+     * @return snapshot rows for all Artifacts sorted by time
      */
-    public List<ODocument> all() {
-        return tx(() -> Collections.unmodifiableList(sql("select from Artifact order by time")));
+    public List<ODocument> allArtifactRows() {
+        return noTx(() -> Collections.unmodifiableList(sql("select " + OrientArtifactSnapshot.PROJECTION + " from Artifact order by time")));
     }
 
     /**
-     * Returns all Artifact ODocuments with the specified hash
+     * Returns snapshot rows for all Artifacts with the specified hash
      * @param hash the hash we're looking for
-     * @return the Artifact ODocuments with the specified hash
+     * @return snapshot rows for the Artifacts with the specified hash
      */
-    public List<ODocument> findArtifactDocsWithHash(String hash) {
-        return tx(() -> {
-            return Collections.unmodifiableList(sql("select from Artifact where sha1 = ?", hash));
+    public List<ODocument> findArtifactRowsWithHash(String hash) {
+        return noTx(() -> {
+            return Collections.unmodifiableList(sql("select " + OrientArtifactSnapshot.PROJECTION + " from Artifact where sha1 = ?", hash));
         });
     }
     
-    public List<ODocument> findArtifactDocsByQuery(String query) {
+    /**
+     * Returns snapshot rows for all Artifacts matching the specified query
+     * (see OrientSearch for syntax)
+     * @param query the query
+     * @return snapshot rows for all matching Artifacts
+     */
+    public List<ODocument> findArtifactRowsByQuery(String query) {
         OrientSearch search = new OrientSearch(query, this);
-        if (search.hasNoParams()) return all();
+        if (search.hasNoParams()) return allArtifactRows();
         if (search.hasNoResults()) return Collections.EMPTY_LIST;
-        return tx(() -> {
+        return noTx(() -> {
            return Collections.unmodifiableList(sql(search.sql(), search.sqlParams().toArray()));
         });
     }
     
+    /**
+     * Returns snapshot rows for one page of Artifacts matching the specified
+     * query (see OrientSearch for syntax), ordered by time (most recent first)
+     * and then by uuid
+     * @param query the query
+     * @param after if present, only Artifacts that sort after this Cursor are returned
+     * @param limit the maximum number of rows to return
+     * @return snapshot rows for one page of matching Artifacts
+     */
+    public List<ODocument> findArtifactRowsByQuery(String query, Optional<Cursor> after, int limit) {
+        OrientSearch search = new OrientSearch(query, this);
+        if (search.hasNoResults()) return Collections.EMPTY_LIST;
+        return noTx(() -> {
+            // the first query walks the time index and stops at the limit, but only orders by time.  if the page
+            // is full, its last rows might be an arbitrary subset of the rows sharing the last row's time (e.g. a
+            // batch upload, whose files all have the same time), so the page is completed from the first of
+            // those rows in uuid order.  only as many rows as are needed are returned, although the database
+            // still sorts every row with that time to find them.
+            List<ODocument> rows = new java.util.ArrayList<>(sql(search.pagedSql(after, limit), search.pagedSqlParams(after)));
+            if (rows.size() == limit) {
+                Date last = rows.get(limit - 1).field("time");
+                rows.removeIf(d -> !((Date) d.field("time")).after(last));
+                rows.addAll(sql(search.boundarySql(after, limit - rows.size()), search.boundarySqlParams(after, last)));
+            }
+            rows.sort(PAGE_ORDER);
+            return Collections.unmodifiableList(rows.size() > limit ? rows.subList(0, limit) : rows);
+        });
+    }
+
+    // most recent first, then by descending uuid (see Cursor)
+    private static final Comparator<ODocument> PAGE_ORDER =
+        Comparator.comparing((ODocument d) -> (Date) d.field("time")).thenComparing(d -> (String) d.field("uuid")).reversed();
+
+    /**
+     * Counts the Artifacts matching the specified query (see OrientSearch for syntax)
+     * @param query the query
+     * @return the number of matching Artifacts
+     */
+    public long countArtifactsByQuery(String query) {
+        OrientSearch search = new OrientSearch(query, this);
+        if (search.hasNoResults()) return 0;
+        return noTx(() -> {
+            List<ODocument> result = sql(search.countSql(), search.sqlParams());
+            return result.isEmpty() ? 0 : ((Number) result.get(0).field("count")).longValue();
+        });
+    }
+    
+    /**
+     * Counts the tags of the Artifacts matching the specified query (see
+     * OrientSearch for syntax).  Up to MAX_INDEX_MATCHES matching Artifacts
+     * are counted by the in-memory tag index, which only needs their uuids;
+     * beyond that, only the tag names of each matching Artifact are read.
+     * @param query the query
+     * @return the number of matching Artifacts with each tag, by tag name
+     */
+    public SortedMap<String, Long> countTagsByQuery(String query) {
+        OrientSearch search = new OrientSearch(query, this);
+        SortedMap<String, Long> result = new java.util.TreeMap<>();
+        if (search.hasNoResults()) return result;
+        if (search.hasNoParams()) { // everything matches, so the maintained counts already have the answer
+            tagStats().forEach(d -> result.put(d.field("name"), countOf(d)));
+            return result;
+        }
+        return noTx(() -> {
+            List<ODocument> rows = sql(search.uuidsSql(MAX_INDEX_MATCHES + 1), search.sqlParams());
+            if (rows.size() <= MAX_INDEX_MATCHES) {
+                int[] ordinals = rows.stream().mapToInt(d -> _ordinals.of(d.field("uuid"))).sorted().toArray();
+                _tagIndex.counts(ordinals).forEach((id, n) -> _tagCache.name(id).ifPresent(t -> result.put(t, (long) n)));
+            } else {
+                sql(search.tagNamesSql(), search.sqlParams())
+                    .forEach(d -> OrientArtifactSnapshot.tagNames(d.field("tagnames")).forEach(t -> result.merge(t, 1L, Long::sum)));
+            }
+            return result;
+        });
+    }
+
     /**
      * Finds the Artifact ODocument with the specified id if it exists
      * @param id the id of the Artifact we're looking for
      * @return the Artifact ODocument with the specified id if it exists
      */
     public Optional<ODocument> findArtifactDocWithId(String id) {
-        return tx(() -> {
-           return sql("select from Artifact where uuid = ?", id).stream().findFirst();
+        // straight to the unique index, since parsing and planning sql costs more than the lookup itself
+        return noTx(() -> {
+            OIdentifiable oid = (OIdentifiable) db().getMetadata().getIndexManager().getIndex("Artifact.uuid").get(id);
+            return Optional.ofNullable(oid == null ? null : (ODocument) oid.getRecord());
         });
     }
 }
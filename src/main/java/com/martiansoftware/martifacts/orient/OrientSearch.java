@@ -1,19 +1,17 @@
 package com.martiansoftware.martifacts.orient;
 
-import com.martiansoftware.martifacts.model.Tags;
+import com.martiansoftware.martifacts.model.Cursor;
+import com.martiansoftware.martifacts.model.Query;
 import com.martiansoftware.time.DateRange;
-import com.orientechnologies.orient.core.record.impl.ODocument;
+import com.orientechnologies.orient.core.id.ORID;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
-import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Optional;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  *
@@ -22,51 +20,57 @@ import java.util.stream.Stream;
 class OrientSearch {
 
     private final String sql;
+    private final String where;
     private final List<Object> params = new java.util.ArrayList<>();
     private boolean noSearchParams = true;
     private boolean noResults = false;
     
     public OrientSearch(String search, OrientBackend backend) {
-        search = search.toLowerCase(); // everything is case-insensitive here...
+        Query query = Query.parse(search); // everything is case-insensitive here...
 
         // everything but tags and dates is ORed together.  Tags and dates are then filters on those results.
         Clause generalClause = new Clause(" OR ");            
         Clause datesClause = new Clause(" OR ");
+        Clause addedClause = new Clause(" OR ");
         Clause tagsClause = new Clause(" AND ");
-        
-        Set<String> tags = new java.util.HashSet<>();  // tags specified as part of query, held separate from other params        
-        List<QueryMatcher> matchers = new java.util.ArrayList<>();
-        matchers.add(new QueryMatcher("id:", "^\\p{XDigit}{8}-(?:\\p{XDigit}{4}-){3}\\p{XDigit}{12}$")  // a UUID or manually prefixed with "id:"
-                        .onMatch((s) -> generalClause.add("uuid = ?", s)));
-        matchers.add(new QueryMatcher("sha1:", "^\\p{XDigit}{40}$")                             // a SHA-1 hash or manually prefixed with "sha1:"
-                        .onMatch((s) -> generalClause.add("sha1 = ?", s)));
-        matchers.add(new QueryMatcher("name:", ".*[*?].*")                                     // any file glob or manually prefixed with "name:"
-                        .onMatch((s) -> addNameToQuery(generalClause, s)));
-        matchers.add(new QueryMatcher("date:", DateRange.regexes())
-                        .onMatch(s -> datesClause.add(sqlForDateRange(DateRange.forQuery(s)))));
-        matchers.add(new QueryMatcher("tag:", ".+")                                             // anything else or manually prefixed with "tag:"
-                        .onMatch(s -> tags.add(s)));
-        
-        // go through search terms and add 'em to the query per the QueryMatchers defined above
-        split(search.toLowerCase()).forEach(
-            (s) -> matchers.stream().filter((m) -> m.matchSuccess(s)).findFirst().orElseThrow(IllegalArgumentException::new)
-        );
 
-        // first check the tags specified in the query.  any results returned must match ALL tags specified.
+        query.added().forEach(dr -> addedClause.add(sqlForDateRange("added", dr)));
+        query.ids().forEach(s -> generalClause.add("uuid = ?", s));
+        query.hashes().forEach(s -> generalClause.add("sha1 = ?", s));
+        query.names().forEach(s -> addNameToQuery(generalClause, s, backend));
+        query.dates().forEach(dr -> datesClause.add(sqlForDateRange("time", dr)));
+
+        // first check the tags specified in the query.  any results returned must match ALL tags specified,
+        // where each tag term matches either a tag of that name or any "key:value" tag with that value.
         // easy shortcut: if any nonexistent tags were specified we can shortcut since we know nothing can match.
-        Collection<String> ntags = Tags.normalize(tags);
-        if (!ntags.isEmpty()) {
-            List<ODocument> tagDocs = backend.findTagDocsFor(ntags);
-            if (tagDocs.size() < ntags.size()) { // nonexistent tags specified - nothing can possibly match
-                noResults = true; noSearchParams = false; sql = ""; return;
-            } else{
-                tagDocs.stream().forEach((t) -> tagsClause.add("tags contains " + t.getIdentity()));
+        List<List<ORID>> tagTerms = new java.util.ArrayList<>();
+        for (String tag : query.tags()) {
+            List<ORID> tagIds = backend.findTagIdsFor(Collections.singleton(tag));
+            if (tagIds.isEmpty()) { // nonexistent tag specified - nothing can possibly match
+                noResults = true; noSearchParams = false; sql = ""; where = ""; return;
+            }
+            tagTerms.add(tagIds);
+        }
+        // the in-memory tag index resolves the tags to the matching artifacts, so only those need to be fetched.
+        // if there are too many of them, the database evaluates the tags itself.
+        if (!tagTerms.isEmpty()) {
+            Optional<List<String>> ids = backend.findArtifactIdsWithAllTags(tagTerms);
+            if (ids.isPresent() && ids.get().isEmpty()) {
+                noResults = true; noSearchParams = false; sql = ""; where = ""; return;
+            } else if (ids.isPresent()) {
+                tagsClause.add("uuid IN ?", ids.get());
+            } else {
+                tagTerms.forEach(tagIds -> tagsClause.add(tagIds.stream().map(t -> "tags contains " + t).collect(Collectors.joining(" OR ", "(", ")"))));
             }
         }
 
+        // name globs can be resolved to nothing by the name index, leaving nothing to OR together (and nothing to match)
+        if (query.hasGeneralTerms() && generalClause.isEmpty()) {
+            noResults = true; noSearchParams = false; sql = ""; where = ""; return;
+        }
+
         // if we got this far we have some sql to build
         StringBuilder s = new StringBuilder();
-        s.append("select from Artifact where ");
         if (!generalClause.isEmpty()) {
             s.append(generalClause.sql());          // all of the non-tag conditions for our sql as a prepared statement...
             params.addAll(generalClause.params());  // ...plus all of the associated parameters for the prepared statement
@@ -77,36 +81,95 @@ class OrientSearch {
             s.append(datesClause.sql());
             noSearchParams = false;
         }
+        if (!addedClause.isEmpty()) {
+            if (!noSearchParams) s.append(" AND ");
+            s.append(addedClause.sql());
+            noSearchParams = false;
+        }
         if (!tagsClause.isEmpty()) {
             if (!noSearchParams) s.append(" AND ");  // only need AND if there was a nonTagsClause
             s.append(tagsClause.sql());
+            params.addAll(tagsClause.params());
             noSearchParams = false;                  // something was specified by the user, so don't return ALL
         }
-        s.append(" order by time desc");
-        sql = s.toString();        
+        where = s.toString();
+        sql = String.format("select %s from Artifact where %s order by time desc", OrientArtifactSnapshot.PROJECTION, where);
     }
     
     public String sql() { return sql; }                                              // text portion of a prepared statement for this search
     public List<Object> sqlParams() { return Collections.unmodifiableList(params); } // arguments for a prepared statement for this search
+    
+    // text portion of a prepared statement for the first limit rows of one page of this search, using keyset
+    // pagination on (time, uuid).  this only orders by time so that it can be answered by walking the
+    // Artifact.time index and stopping at the limit; rows sharing the time of the last row are then
+    // fetched with boundarySql() to put them in uuid order.
+    public String pagedSql(Optional<Cursor> after, int limit) {
+        return String.format("select %s from Artifact%s order by time desc limit %d",
+                                OrientArtifactSnapshot.PROJECTION, pagedWhere(after, false), limit);
+    }
+
+    // arguments for a prepared statement for one page of this search
+    public List<Object> pagedSqlParams(Optional<Cursor> after) {
+        List<Object> result = new java.util.ArrayList<>(params);
+        after.ifPresent(c -> result.addAll(Arrays.asList(c.time(), c.time(), c.id())));
+        return result;
+    }
+
+    // text portion of a prepared statement for the first limit rows, in uuid order, of one page of this search
+    // with a specific time
+    public String boundarySql(Optional<Cursor> after, int limit) {
+        return String.format("select %s from Artifact%s order by uuid desc limit %d",
+                                OrientArtifactSnapshot.PROJECTION, pagedWhere(after, true), limit);
+    }
+
+    // arguments for a prepared statement for the rows of one page of this search with the specified time
+    public List<Object> boundarySqlParams(Optional<Cursor> after, Date time) {
+        List<Object> result = pagedSqlParams(after);
+        result.add(time);
+        return result;
+    }
+
+    private String pagedWhere(Optional<Cursor> after, boolean atTime) {
+        List<String> conditions = new java.util.ArrayList<>();
+        if (!noSearchParams) conditions.add(where);
+        if (after.isPresent()) conditions.add("time <= ? AND (time < ? OR uuid < ?)"); // range-scannable form of (time, uuid) < (?, ?)
+        if (atTime) conditions.add("time = ?");
+        return conditions.isEmpty() ? "" : " where " + conditions.stream().collect(Collectors.joining(" AND "));
+    }
+    
+    // text portion of a prepared statement selecting just the uuids of (at most limit) results of this search
+    // (see sqlParams() for arguments)
+    public String uuidsSql(int limit) {
+        return String.format("select uuid from Artifact%s limit %d", noSearchParams ? "" : " where " + where, limit);
+    }
+
+    // text portion of a prepared statement selecting just the tag names of the results of this search (see sqlParams() for arguments)
+    public String tagNamesSql() {
+        return "select tags.name as tagnames from Artifact" + (noSearchParams ? "" : " where " + where);
+    }
+
+    // text portion of a prepared statement counting the results of this search (see sqlParams() for arguments)
+    public String countSql() {
+        return "select count(*) as count from Artifact" + (noSearchParams ? "" : " where " + where);
+    }
     public boolean hasNoParams() { return noSearchParams; }                          // if user specified no search params, return all documents!
     public boolean hasNoResults() { return noResults; }                              // if query can't return any results, don't bother with query!
     
-    // split a String containing a query into individual search parameters.  TODO: handle quoted strings so users can search for filenames with spaces
-    private Stream<String> split(String search) { return Arrays.asList(search.split("\\s+")).stream().filter((s) -> !s.isEmpty()); }
-    
-    private String sqlForDateRange(DateRange dr) {
-        return String.format("time between '%s 00:00:00' and '%s 23:59:59'", dr.from(), dr.to());
+    private String sqlForDateRange(String field, DateRange dr) {
+        return String.format("%s between '%s 00:00:00' and '%s 23:59:59'", field, dr.from(), dr.to());
     }
     
     // filenames in queries are a bit different.  straight names work as prepared statements, but regexes don't.
-    private void addNameToQuery(Clause clause, String s){
-        if (isGlob(s)) clause.add(String.format("name MATCHES \"%s\"", globToRegex(s)));
+    // globs are narrowed down to matching uuids using the name index where possible, avoiding a regex scan.
+    private void addNameToQuery(Clause clause, String s, OrientBackend backend){
+        if (Query.isGlob(s)) {
+            Optional<List<String>> ids = backend.findArtifactIdsMatchingGlob(s);
+            if (!ids.isPresent()) clause.add(String.format("name MATCHES \"%s\"", globToRegex(s)));
+            else if (!ids.get().isEmpty()) clause.add("uuid IN ?", ids.get());
+        }
         else clause.add("name = ?", s);
     }    
     
-    // detects file globs
-    private boolean isGlob(String s) { return s.contains("*") || s.contains("?"); }
-    
     // converts a filename glob (with special chars * and ?) to a regex
     private String globToRegex(String s) {
         StringBuilder glob = new StringBuilder("(?i)"); // case-insensitive
@@ -129,35 +192,6 @@ class OrientSearch {
         return glob.toString();
     }
 
-    // helper to parse search query.  for some terms we can automatically figure out what kind of
-    // search term they are (e.g., a file glob only applies to a filename, and if something is clearly
-    // a sha1 hash we can safely assume that's what the user is looking for).  this helper provides a
-    // way to force specific search terms with a prefix as well, in case the user really really wants
-    // a tag that looks like e.g. a UUID.
-    class QueryMatcher {
-        private final String _prefix;                                         // if present and query term matches this, forces a match.
-        private final List<Pattern> _patterns = new java.util.LinkedList<>(); // used to auto-match if no term prefix present in query term
-        private Consumer<String> _action;                                     // what to do if there's a match
-        public QueryMatcher(String prefixToForce, String... regexes) {
-            _prefix = prefixToForce;
-            for (String regex : regexes) _patterns.add(Pattern.compile(regex));
-        }
-        private String match(String query) {                                  // if there's a match, what is its text?  (strip prefix if present)
-            if (_prefix != null && query.startsWith(_prefix)) return query.substring(_prefix.length());
-            for (Pattern p : _patterns) {
-                Matcher m = p.matcher(query);
-                if (m.matches()) return query;
-            }
-            return null;                                                      // no match for you!
-        }
-        public QueryMatcher onMatch(Consumer<String> action) { _action = action; return this; }
-        public boolean matchSuccess(String s) {                               // if this matches, call the action and return true.  used with stream.findFirst(), ensures only first match is applied
-            String m = match(s);
-            if (m != null) _action.accept(m);
-            return m != null;
-        }
-    }
-    
     // helper to build a prepared statement with corresponding parameters
     class Clause {
         private final String _joiner;
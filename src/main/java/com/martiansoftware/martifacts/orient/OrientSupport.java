@@ -80,6 +80,20 @@ class OrientSupport {
         }
     }
 
+    /**
+     * Ensures the database is set for the current thread and returns a result
+     * from the specified supplier, run WITHOUT a transaction.  Read-only work
+     * sees the same committed data either way, but doesn't pay for beginning
+     * and committing a transaction.
+     * 
+     * @param supplier the supplier to query outside of a transaction
+     */
+    <R> R noTx(Supplier<R> supplier) {
+        try (ODatabaseDocumentTx tx = _pool.acquire()) {
+            return supplier.get();
+        }
+    }
+
     /**
      * Closes the database, duh.
      */
@@ -108,6 +122,7 @@ class OrientSupport {
             return supplier.get();
         }
     }
+
     
 
     
@@ -117,6 +132,16 @@ class OrientSupport {
 //        }
 //    }
     
+    /**
+     * Commits the current transaction.  Transactions are otherwise only
+     * committed when the database is closed, which logs and swallows any
+     * failure, so work that needs to know whether it was committed must call
+     * this as its last step.
+     */
+    void commit() {
+        db().commit();
+    }
+
     /**
      * Rolls back the current transaction, if any.
      */
@@ -0,0 +1,114 @@
+package com.martiansoftware.martifacts.orient;
+
+import com.martiansoftware.martifacts.model.Page;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A bounded (LRU) cache of query results, limited both by the number of
+ * results and by the total number of rows (e.g. artifacts) they hold, so that
+ * a few large results can't fill the heap.  Every entry remembers the store's
+ * write generation at the time its result was computed, and is only used
+ * while the generation is unchanged, so any write invalidates every entry
+ * without having to touch the cache.
+ *
+ * Cached results are shared between callers, so they must be immutable.
+ *
+ * @author mlamb
+ */
+class QueryCache {
+
+    private final int _capacity, _maxResultSize, _maxRows;
+    private long _rows = 0; // total rows of all entries, guarded by _entries
+    private final LongSupplier _generation;
+    private final Map<String, Entry> _entries;
+    private final AtomicLong _hits = new AtomicLong(), _misses = new AtomicLong();
+
+    /**
+     * @param capacity the maximum number of results to cache
+     * @param maxResultSize results with more rows than this aren't cached
+     * @param maxRows the maximum total number of rows of all cached results
+     * @param generation supplies the store's current write generation
+     */
+    QueryCache(int capacity, int maxResultSize, int maxRows, LongSupplier generation) {
+        _capacity = capacity;
+        _maxResultSize = maxResultSize;
+        _maxRows = maxRows;
+        _generation = generation;
+        _entries = new java.util.LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // collections, maps, and pages count a row per element; anything else is a single row
+    private static int rows(Object result) {
+        if (result instanceof Collection) return Math.max(1, ((Collection) result).size());
+        if (result instanceof Map) return Math.max(1, ((Map) result).size());
+        if (result instanceof Page) return Math.max(1, ((Page) result).artifacts().size());
+        return 1;
+    }
+
+    /**
+     * Returns the cached result for the specified key if it is still current,
+     * otherwise computes, caches, and returns it
+     *
+     * @param key the (normalized) query
+     * @param compute computes the result of the query
+     * @return the result of the query
+     */
+    <T> T get(String key, Supplier<T> compute) {
+        long generation = _generation.getAsLong(); // read before computing, so a concurrent write leaves the entry stale
+        synchronized (_entries) {
+            Entry e = _entries.get(key);
+            if (e != null && e.generation == generation) {
+                _hits.incrementAndGet();
+                return (T) e.result;
+            }
+        }
+        _misses.incrementAndGet();
+        T result = compute.get();
+        int rows = rows(result);
+        if (rows <= _maxResultSize) {
+            synchronized (_entries) {
+                Entry old = _entries.put(key, new Entry(generation, result, rows));
+                _rows += rows - (old == null ? 0 : old.rows);
+                // evict least recently used entries until both bounds are met
+                Iterator<Entry> lru = _entries.values().iterator();
+                while ((_entries.size() > _capacity || _rows > _maxRows) && lru.hasNext()) {
+                    _rows -= lru.next().rows;
+                    lru.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of cached results and rows, hits, and misses
+     * @return cache statistics, by name
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> result = new java.util.TreeMap<>();
+        synchronized (_entries) {
+            result.put("querycache.size", _entries.size());
+            result.put("querycache.rows", _rows);
+        }
+        result.put("querycache.capacity", _capacity);
+        result.put("querycache.hits", _hits.get());
+        result.put("querycache.misses", _misses.get());
+        return result;
+    }
+
+    private static class Entry {
+        final long generation;
+        final Object result;
+        final int rows;
+        Entry(long generation, Object result, int rows) {
+            this.generation = generation;
+            this.result = result;
+            this.rows = rows;
+        }
+    }
+}
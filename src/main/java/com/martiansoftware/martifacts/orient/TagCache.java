@@ -0,0 +1,108 @@
+package com.martiansoftware.martifacts.orient;
+
+import com.martiansoftware.martifacts.model.Tags;
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory map of (normalized) tag names to Tag record ids.  The tag
+ * vocabulary is small and rarely changes, so keeping all of it in memory lets
+ * tag lookups skip the database entirely.
+ *
+ * Tags are also indexed by value (see Tags.value()), so that a search term
+ * like "2" finds "version:2" without looking at every tag.
+ *
+ * Only persistent record ids are cached: tags created inside a transaction
+ * have temporary ids until the transaction commits, so they must be added
+ * after the commit.
+ *
+ * @author mlamb
+ */
+class TagCache {
+
+    private final ConcurrentMap<String, ORID> _ids = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<ORID>> _byValue = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ORID, String> _names = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the specified Tag document to the cache, if it has been persisted
+     * @param tagDoc the Tag document to add
+     */
+    void put(ODocument tagDoc) {
+        ORID id = tagDoc.getIdentity();
+        if (!id.isPersistent()) return;
+        String name = tagDoc.field("name");
+        ORID copy = id.copy();
+        _ids.put(name, copy);
+        _names.put(copy, name);
+        _byValue.computeIfAbsent(Tags.value(name), v -> ConcurrentHashMap.newKeySet()).add(copy);
+    }
+
+    /**
+     * Adds all of the specified Tag documents to the cache
+     * @param tagDocs the Tag documents to add
+     */
+    void putAll(Collection<ODocument> tagDocs) {
+        tagDocs.forEach(this::put);
+    }
+
+    void remove(String name) {
+        ORID id = _ids.remove(name);
+        if (id != null) {
+            _names.remove(id);
+            _byValue.computeIfPresent(Tags.value(name), (v, ids) -> { ids.remove(id); return ids.isEmpty() ? null : ids; });
+        }
+    }
+
+    void clear() {
+        _ids.clear();
+        _names.clear();
+        _byValue.clear();
+    }
+
+    /**
+     * Returns the record id of the Tag with the specified (normalized) name, if it exists
+     * @param name the name of the tag
+     * @return the record id of the Tag with the specified name, if it exists
+     */
+    Optional<ORID> get(String name) { return Optional.ofNullable(_ids.get(name)); }
+
+    /**
+     * Returns the name of the Tag with the specified record id, if it exists
+     * @param id the record id of the tag
+     * @return the name of the Tag with the specified record id, if it exists
+     */
+    Optional<String> name(ORID id) { return Optional.ofNullable(_names.get(id)); }
+
+    /**
+     * Returns the record ids of all Tags matching the specified (normalized)
+     * search term, either exactly or as the value of a "key:value" tag (e.g.
+     * the term "2" finds tag "version:2").
+     *
+     * @param term the search term
+     * @return the record ids of all matching tags
+     */
+    List<ORID> find(String term) {
+        List<ORID> result = new java.util.ArrayList<>(_byValue.getOrDefault(term, Collections.emptySet()));
+        ORID exact = _ids.get(term); // e.g. "version:2" itself, which is indexed under "2"
+        if (exact != null && !result.contains(exact)) result.add(exact);
+        return result;
+    }
+
+    /**
+     * Returns the names of all cached Tags
+     * @return the names of all cached Tags
+     */
+    SortedSet<String> names() {
+        return Collections.unmodifiableSortedSet(new TreeSet<>(_ids.keySet()));
+    }
+}
@@ -0,0 +1,121 @@
+package com.martiansoftware.martifacts.orient;
+
+import com.orientechnologies.orient.core.id.ORID;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index of Tag record ids to the ordinals (see Ordinals)
+ * of the artifacts that have them, so that multi-tag searches can be answered
+ * by intersecting ordinal sets (most selective first) instead of by the
+ * database evaluating a chain of "tags contains" conditions.
+ *
+ * @author mlamb
+ */
+class TagIndex {
+
+    private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+    private final Map<ORID, OrdinalSet> _artifacts = new java.util.HashMap<>();
+
+    /**
+     * Records that the artifact with the specified ordinal has the specified tag
+     * @param tag the persistent record id of the Tag
+     * @param ordinal the ordinal of the artifact
+     */
+    void add(ORID tag, int ordinal) {
+        _lock.writeLock().lock();
+        try {
+            _artifacts.computeIfAbsent(tag, k -> new OrdinalSet()).add(ordinal);
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records that the artifact with the specified ordinal no longer has the specified tag
+     * @param tag the persistent record id of the Tag
+     * @param ordinal the ordinal of the artifact
+     */
+    void remove(ORID tag, int ordinal) {
+        _lock.writeLock().lock();
+        try {
+            OrdinalSet os = _artifacts.get(tag);
+            if (os == null) return;
+            os.remove(ordinal);
+            if (os.isEmpty()) _artifacts.remove(tag);
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of artifacts with the specified tag
+     * @param tag the persistent record id of the Tag
+     * @return the number of artifacts with the tag
+     */
+    int count(ORID tag) {
+        _lock.readLock().lock();
+        try {
+            OrdinalSet os = _artifacts.get(tag);
+            return os == null ? 0 : os.size();
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the specified artifacts having each tag
+     * @param ordinals the (ascending) ordinals of the artifacts
+     * @return the number of the artifacts with each tag, by persistent Tag
+     *         record id, for every tag at least one of them has
+     */
+    Map<ORID, Integer> counts(int[] ordinals) {
+        Map<ORID, Integer> result = new java.util.HashMap<>();
+        if (ordinals.length == 0) return result;
+        _lock.readLock().lock();
+        try {
+            _artifacts.forEach((tag, os) -> {
+                int n = os.countIn(ordinals);
+                if (n > 0) result.put(tag, n);
+            });
+        } finally {
+            _lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ordinals of all artifacts matching ALL of the specified
+     * terms, where each term is a collection of Tag record ids, ANY of which
+     * matches (e.g. both "2" and "version:2" for a search for "2").
+     *
+     * @param terms the terms to match
+     * @return the (ascending) ordinals of all matching artifacts
+     */
+    int[] findAll(List<? extends Collection<ORID>> terms) {
+        if (terms.isEmpty()) return new int[0];
+        _lock.readLock().lock();
+        try {
+            List<OrdinalSet> sets = new java.util.ArrayList<>(terms.size());
+            for (Collection<ORID> term : terms) {
+                List<OrdinalSet> any = new java.util.ArrayList<>(term.size());
+                for (ORID tag : term) {
+                    OrdinalSet os = _artifacts.get(tag);
+                    if (os != null) any.add(os);
+                }
+                if (any.isEmpty()) return new int[0];
+                sets.add(any.size() == 1 ? any.get(0) : OrdinalSet.union(any));
+            }
+            // most selective first, so a rare tag combined with a common one costs about as much as the rare one alone
+            sets.sort((a, b) -> Integer.compare(a.size(), b.size()));
+            int[] result = sets.get(0).toArray();
+            for (int i = 1; i < sets.size() && result.length > 0; ++i) result = sets.get(i).intersect(result);
+            return result;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+}
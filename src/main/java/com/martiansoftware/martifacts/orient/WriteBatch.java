@@ -0,0 +1,66 @@
+package com.martiansoftware.martifacts.orient;
+
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * State shared by the writes that the WriteQueue commits in a single
+ * transaction: the Tags created so far (so later writes in the same
+ * transaction reuse them instead of creating duplicates), the resulting
+ * changes to tag usage counts, the Tags deleted because nothing uses them any
+ * more, and work to do once the transaction has been committed.
+ *
+ * @author mlamb
+ */
+class WriteBatch {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBatch.class);
+
+    private final Map<String, ODocument> _createdTags = new java.util.LinkedHashMap<>();
+    private final Map<OIdentifiable, Long> _tagCountDeltas = new java.util.HashMap<>();
+    private final List<String> _deletedTags = new java.util.ArrayList<>();
+    private final List<Runnable> _afterCommit = new java.util.ArrayList<>();
+
+    /**
+     * Returns the Tag with the specified name if it was created by this batch
+     * @param name the (normalized) name of the tag
+     * @return the Tag ODocument, or null if this batch didn't create it
+     */
+    ODocument createdTag(String name) { return _createdTags.get(name); }
+
+    void tagCreated(String name, ODocument tagDoc) { _createdTags.put(name, tagDoc); }
+
+    Collection<ODocument> createdTags() { return Collections.unmodifiableCollection(_createdTags.values()); }
+
+    void adjustTagCount(OIdentifiable tag, long delta) { _tagCountDeltas.merge(tag, delta, Long::sum); }
+
+    Map<OIdentifiable, Long> tagCountDeltas() { return Collections.unmodifiableMap(_tagCountDeltas); }
+
+    void tagDeleted(String name) { _deletedTags.add(name); }
+
+    List<String> deletedTags() { return Collections.unmodifiableList(_deletedTags); }
+
+    /**
+     * Registers something to be done once the batch has been committed (e.g.
+     * updating in-memory indexes, which need persistent record ids)
+     * @param r the thing to do
+     */
+    void afterCommit(Runnable r) { _afterCommit.add(r); }
+
+    // each is run even if an earlier one fails, since the batch is already committed
+    void committed() {
+        for (Runnable r : _afterCommit) {
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                log.error("Unable to finish updating after a commit", e);
+            }
+        }
+    }
+}
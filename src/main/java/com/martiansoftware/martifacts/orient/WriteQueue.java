@@ -0,0 +1,188 @@
+package com.martiansoftware.martifacts.orient;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Funnels writes through a single writer thread, which commits all of the
+ * writes arriving within a short window in one transaction ("group commit").
+ * Writes never contend with each other (e.g. two uploads creating the same
+ * Tag), and a burst of writes costs one commit instead of one per write.
+ *
+ * If a batch fails to commit, each of its writes is retried in a transaction
+ * of its own so that one bad write doesn't fail the others.  Writes must
+ * therefore be safe to run more than once, and the Committer must only throw
+ * if nothing was committed.
+ *
+ * @author mlamb
+ */
+class WriteQueue {
+
+    /**
+     * A write, run on the writer thread within a transaction shared with the
+     * other writes in its batch
+     */
+    interface Write<R> {
+        R apply(WriteBatch batch);
+    }
+
+    /**
+     * Commits batches of writes
+     */
+    interface Committer {
+        /**
+         * Runs the specified writes in a single transaction and commits it
+         * @param writes the writes to run
+         * @param retry if false, the writes are being retried one at a time after
+         *        their batch failed, and should only be tried once more
+         * @return the result of each write, in order
+         * @throws RuntimeException if any write fails or the transaction can't be committed
+         */
+        List<Object> commit(List<Write<?>> writes, boolean retry);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(WriteQueue.class);
+    private static final Pending<?> CLOSE = new Pending<>(null);
+
+    private final Committer _committer;
+    private final long _windowNanos;
+    private final int _maxBatchSize;
+    private final BlockingQueue<Pending<?>> _queue = new java.util.concurrent.LinkedBlockingQueue<>();
+    private final Thread _writer;
+    private final AtomicLong _batches = new AtomicLong(), _writes = new AtomicLong(), _retried = new AtomicLong();
+    private boolean _closed = false;
+
+    /**
+     * Creates a WriteQueue and starts its writer thread
+     * @param committer commits each batch of writes
+     * @param windowMillis how long to wait for more writes after the first write of a batch arrives
+     * @param maxBatchSize the maximum number of writes to commit together
+     */
+    WriteQueue(Committer committer, long windowMillis, int maxBatchSize) {
+        _committer = committer;
+        _windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        _maxBatchSize = maxBatchSize;
+        _writer = new Thread(this::writeLoop, "martifacts-writer");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /**
+     * Queues the specified write
+     * @param write the write to queue
+     * @return the eventual result of the write
+     */
+    synchronized <R> CompletableFuture<R> submit(Write<R> write) {
+        if (_closed) throw new IllegalStateException("WriteQueue is closed");
+        Pending<R> p = new Pending<>(write);
+        _queue.add(p);
+        return p.future;
+    }
+
+    /**
+     * Queues the specified write and waits for its result.  Must not be called
+     * from within another write.
+     *
+     * @param write the write to run
+     * @return the result of the write
+     */
+    <R> R run(Write<R> write) {
+        try {
+            return submit(write).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Commits any writes already queued, then stops the writer thread
+     * @throws InterruptedException if interrupted while waiting for the writer thread
+     */
+    void close() throws InterruptedException {
+        synchronized (this) {
+            if (_closed) return;
+            _closed = true;
+            _queue.add(CLOSE);
+        }
+        _writer.join();
+    }
+
+    /**
+     * Returns the number of batches committed, writes committed, and writes
+     * retried after their batch failed
+     * @return write queue statistics, by name
+     */
+    Map<String, Object> stats() {
+        Map<String, Object> result = new java.util.TreeMap<>();
+        result.put("writequeue.batches", _batches.get());
+        result.put("writequeue.writes", _writes.get());
+        result.put("writequeue.retried", _retried.get());
+        result.put("writequeue.pending", _queue.size());
+        return result;
+    }
+
+    private void writeLoop() {
+        boolean closing = false;
+        while (!closing) {
+            List<Pending<?>> batch = new java.util.ArrayList<>();
+            try {
+                Pending<?> p = _queue.take();
+                long deadline = System.nanoTime() + _windowNanos;
+                // once the window has passed, poll() still collects whatever is already queued
+                while (p != null && p != CLOSE) {
+                    batch.add(p);
+                    if (batch.size() == _maxBatchSize) break;
+                    p = _queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                closing = p == CLOSE;
+            } catch (InterruptedException e) {
+                log.warn("Writer thread interrupted; no more writes will be committed.");
+                closing = true;
+            }
+            if (!batch.isEmpty()) commit(batch, true);
+        }
+        List<Pending<?>> abandoned = new java.util.ArrayList<>();
+        _queue.drainTo(abandoned);
+        abandoned.stream()
+            .filter(p -> p != CLOSE)
+            .forEach(p -> p.future.completeExceptionally(new IllegalStateException("WriteQueue is closed")));
+    }
+
+    private void commit(List<Pending<?>> batch, boolean retry) {
+        try {
+            List<Object> results = _committer.commit(batch.stream().map(p -> p.write).collect(Collectors.toList()), retry);
+            _batches.incrementAndGet();
+            _writes.addAndGet(batch.size());
+            for (int i = 0; i < batch.size(); ++i) batch.get(i).complete(results.get(i));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).future.completeExceptionally(e);
+                return;
+            }
+            log.debug("Batch of {} writes failed ({}); retrying each separately.", batch.size(), e.toString());
+            _retried.addAndGet(batch.size());
+            batch.forEach(p -> commit(Collections.singletonList(p), false)); // the batch already had its retries
+        } catch (Throwable t) { // e.g. an Error, which must not kill the writer thread and strand every waiting writer
+            log.error("Batch of {} writes failed", batch.size(), t);
+            batch.forEach(p -> p.future.completeExceptionally(t));
+        }
+    }
+
+    private static class Pending<R> {
+        final Write<R> write;
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        Pending(Write<R> write) { this.write = write; }
+        void complete(Object result) { future.complete((R) result); }
+    }
+}
@@ -3,9 +3,14 @@ package com.martiansoftware.martifacts.web;
 import static com.martiansoftware.boom.Boom.before;
 import static com.martiansoftware.boom.Boom.get;
 import static com.martiansoftware.boom.Boom.post;
+import com.martiansoftware.martifacts.log.LogArtifactStore;
+import com.martiansoftware.martifacts.model.ArtifactStore;
 import com.martiansoftware.martifacts.orient.OrientArtifactStore;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,15 +21,28 @@ import org.slf4j.LoggerFactory;
 public class App {
     
     private static final Logger log = LoggerFactory.getLogger(App.class);
-    private static OrientArtifactStore _store;
+    private static ArtifactStore _store;
+    private static final int INGEST_THREADS = 1; // jobs only create artifacts, which the store does one batch at a time anyway
+    private static final int MAX_QUEUED_INGEST_JOBS = 256;
+    private static final int MAX_REMEMBERED_INGEST_JOBS = 10000;
 
     private static void usageAndExit(int exitCode) {
-        System.err.println("\nUsage: martifactsd [-h|--help]     (1st form)");
-        System.err.println("  or:  martifactsd DATA_DIRECTORY  (2nd form)");
-        System.err.println("  or:  martifactsd                 (3rd form)\n");
+        System.err.println("\nUsage: martifactsd [-h|--help]                      (1st form)");
+        System.err.println("  or:  martifactsd [OPTIONS] DATA_DIRECTORY         (2nd form)");
+        System.err.println("  or:  martifactsd [OPTIONS]                        (3rd form)\n");
         System.err.println("In the first form, print this message and exit.");
         System.err.println("In the second form, start the server, storing all artifacts and data in the specified DATA_DIRECTORY.");
         System.err.println("In the third form, start the server, storing all artifacts and data in $HOME/.martifacts");
+        System.err.println("\nOPTIONS are any of --compress-blobs, --rebuild-tag-counts, --log-store, and --migrate-to-log-store.");
+        System.err.println("\nWith --compress-blobs, newly added text-like artifacts are stored gzipped and served");
+        System.err.println("as-is to clients that accept gzip encoding.");
+        System.err.println("\nWith --rebuild-tag-counts, tag counts (as reported by /tagstats) are recomputed");
+        System.err.println("from the stored artifacts before the server starts.");
+        System.err.println("\nWith --log-store, artifact metadata is kept in memory and persisted in an append-only");
+        System.err.println("log (DATA_DIRECTORY/metadata.log) instead of an OrientDB database.  This starts much");
+        System.err.println("faster, but the two stores are separate: use --migrate-to-log-store once to copy all");
+        System.err.println("artifacts from the OrientDB database into the log before serving from the log.");
+        System.err.println("Migration is safe to repeat; artifacts already in the log are skipped.");
         System.exit(exitCode);
     }
     
@@ -33,16 +51,45 @@ public class App {
         return t;
     }
     
-    private static void launch(Path dataDir) {
+    private static ArtifactStore open(Path dataDir, boolean compressBlobs, boolean rebuildTagCounts, boolean logStore, boolean migrate) throws IOException {
+        if (!logStore && !migrate) {
+            OrientArtifactStore result = new OrientArtifactStore(dataDir, compressBlobs);
+            if (rebuildTagCounts) result.rebuildTagCounts();
+            return result;
+        }
+        if (rebuildTagCounts) log.warn("Ignoring --rebuild-tag-counts: tag counts are always exact in the log store.");
+        LogArtifactStore result = new LogArtifactStore(dataDir, compressBlobs);
+        if (migrate) {
+            log.info("Migrating artifacts from OrientDB to {}", dataDir.resolve("metadata.log"));
+            OrientArtifactStore orient = new OrientArtifactStore(dataDir, compressBlobs);
+            try {
+                log.info("Migrated {} artifacts.", result.importFrom(orient));
+            } finally {
+                orient.close();
+            }
+        }
+        return result;
+    }
+
+    private static void launch(Path dataDir, boolean compressBlobs, boolean rebuildTagCounts, boolean logStore, boolean migrate) {
         try {
             log.info("Starting server with data in {}", dataDir);
-            _store = new OrientArtifactStore(dataDir);
+            _store = open(dataDir, compressBlobs, rebuildTagCounts, logStore, migrate);
             before(new AppRootHelper());
-            post("/add", new ArtifactAdder(_store)::add);
+            IngestJobs jobs = new IngestJobs(INGEST_THREADS, MAX_QUEUED_INGEST_JOBS, MAX_REMEMBERED_INGEST_JOBS);
+            ArtifactAdder adder = new ArtifactAdder(_store, jobs);
+            post("/add", adder::add);
+            post("/addbatch", adder::addBatch);
+            get("/job", new JobGetter(jobs)::get);
+            ArtifactHashAdder hashAdder = new ArtifactHashAdder(_store);
+            get("/check/:sha1", hashAdder::check);
+            post("/addbyhash", hashAdder::add);
             get("/get/:id", new ArtifactGetter(_store)::get);
             get("/search", new ArtifactSearcher(_store)::search);
+            get("/archive", new ArtifactArchiver(_store)::archive);
             get("/martifacts", new ClientGetter()::getClient);
             get("/tagstats", new TagStatsGetter(_store)::tagstats);
+            get("/stats", new StatsGetter(_store, jobs)::stats);
             
             log.info("Ready for clients.");
         } catch (Exception e) {
@@ -51,13 +98,18 @@ public class App {
     }
        
     public static void main(String[] args) throws Exception {
-        switch(args.length) {
+        List<String> argList = new java.util.ArrayList<>(Arrays.asList(args));
+        boolean compressBlobs = argList.remove("--compress-blobs");
+        boolean rebuildTagCounts = argList.remove("--rebuild-tag-counts");
+        boolean logStore = argList.remove("--log-store");
+        boolean migrate = argList.remove("--migrate-to-log-store");
+        switch(argList.size()) {
             case 0: Path p = Paths.get(System.getProperty("user.home")).resolve(".martifacts");
                     log.info("No data directory specified; using default {}", p);
-                    launch(p);
+                    launch(p, compressBlobs, rebuildTagCounts, logStore, migrate);
                     break;
-            case 1: if ("-h".equals(args[0]) || "--help".equals(args[0])) usageAndExit(0);
-                    launch(Paths.get(args[0]));
+            case 1: if ("-h".equals(argList.get(0)) || "--help".equals(argList.get(0))) usageAndExit(0);
+                    launch(Paths.get(argList.get(0)), compressBlobs, rebuildTagCounts, logStore, migrate);
                     break;
             default: usageAndExit(1);
         }
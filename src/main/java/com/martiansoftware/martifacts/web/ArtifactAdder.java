@@ -1,19 +1,29 @@
 package com.martiansoftware.martifacts.web;
 
-import com.martiansoftware.boom.Boom;
 import static com.martiansoftware.boom.Boom.halt;
 import static com.martiansoftware.boom.Boom.q;
 import static com.martiansoftware.boom.Boom.request;
+import static com.martiansoftware.boom.Boom.response;
+import com.martiansoftware.martifacts.model.Artifact;
 import com.martiansoftware.martifacts.model.ArtifactStore;
+import com.martiansoftware.martifacts.model.NewArtifact;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import javax.servlet.MultipartConfigElement;
-import javax.servlet.ServletException;
-import javax.servlet.http.Part;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.commons.fileupload.util.Streams;
 
 /**
  *
@@ -22,38 +32,125 @@ import javax.servlet.http.Part;
 public class ArtifactAdder {
 
     private final ArtifactStore _store;
-    private static final int HTTP_MISSING_OR_BAD_PARAM = 422;
-    
-    public ArtifactAdder(ArtifactStore store) { _store = store; }
-    
-    private Date getFileTimeFromRequest() {
-        Optional<String> fileTimeS = q("filetime");        
+    private final IngestJobs _jobs;
+    static final int HTTP_MISSING_OR_BAD_PARAM = 422;
+    static final int HTTP_UNAVAILABLE = 503;
+
+    public ArtifactAdder(ArtifactStore store, IngestJobs jobs) {
+        _store = store;
+        _jobs = jobs;
+    }
+
+    static Date getFileTime(Optional<String> fileTimeS) {
         if (!fileTimeS.isPresent()) return new Date();
         try {
             return new Date(Long.parseLong(fileTimeS.get()));
         } catch (Exception e) {
-            halt(HTTP_MISSING_OR_BAD_PARAM, String.format("Unable to parse filetime '%s': " + e.getMessage(), fileTimeS));
+            halt(HTTP_MISSING_OR_BAD_PARAM, String.format("Unable to parse filetime '%s': " + e.getMessage(), fileTimeS.get()));
             return null; // unreachable due to halt, included to appease compiler
         }
     }
-    
-    private Collection<String> getTagsFromRequest() {
-        Optional<String> tagString = q("tags");
+
+    static Collection<String> getTags(Optional<String> tagString) {
         return tagString.map(s -> Arrays.asList(s.split("\\s+"))).orElse(Collections.EMPTY_LIST);
     }
-    
+
     // e.g.: curl -H "ACCEPT: text/plain" -F file=@testdisk.log -F "filetime=`date -r testdisk.log '+%s000'`" -F "tags=tag1 tag2 tag3" http://127.0.0.1:4567/add
-    Object add() throws IOException, ServletException {
-        MultipartConfigElement multipartConfigElement = new MultipartConfigElement(Boom.tmp().toString(), Long.MAX_VALUE, Long.MAX_VALUE, 1024 * 1024);
-        request().raw().setAttribute(org.eclipse.jetty.server.Request.__MULTIPART_CONFIG_ELEMENT, multipartConfigElement);
-   
-        Part file = request().raw().getPart("file");
-        if (file == null) halt(HTTP_MISSING_OR_BAD_PARAM, "No file provided!");
-
-        return ArtifactResponse.of(_store.create(file.getSubmittedFileName(),
-                                                 file.getInputStream(),
-                                                 getFileTimeFromRequest(),
-                                                 getTagsFromRequest()));
-    }
-    
+    //
+    // with "?async=true", the data is stored and the artifact is then created by a job (see IngestJobs); the
+    // response is the job's status, and "/job?id=..." returns the artifact once the job is done.
+    Object add() throws IOException {
+        boolean async = isAsync();
+        Upload upload = readUpload(true);
+        if (upload.files.isEmpty()) halt(HTTP_MISSING_OR_BAD_PARAM, "No file provided!");
+        String[] file = upload.files.get(0);
+        Date fileTime = upload.fileTime();
+        Collection<String> tags = upload.tags();
+        if (async) {
+            return submit(() -> _store.createFromHash(file[0], file[1], fileTime, tags)
+                                    .map(Collections::singletonList)
+                                    .orElse(Collections.EMPTY_LIST));
+        }
+        return ArtifactResponse.of(_store.createFromHash(file[0], file[1], fileTime, tags));
+    }
+
+    // e.g.: curl -H "ACCEPT: text/plain" -F file=@build.log -F file=@build.tar.gz -F "tags=build:1234 nightly" http://127.0.0.1:4567/addbatch
+    //
+    // every file part is stored, and then all of the artifacts are created together with the same tags and filetime.
+    Object addBatch() throws IOException {
+        boolean async = isAsync();
+        Upload upload = readUpload(false);
+        if (upload.files.isEmpty()) halt(HTTP_MISSING_OR_BAD_PARAM, "No files provided!");
+        Date fileTime = upload.fileTime();
+        Collection<String> tags = upload.tags();
+        List<NewArtifact> artifacts = upload.files.stream().map(f -> new NewArtifact(f[0], f[1], fileTime, tags)).collect(Collectors.toList());
+        if (async) return submit(() -> _store.createAll(artifacts));
+        return ArtifactResponse.of(_store.createAll(artifacts));
+    }
+
+    // async uploads are turned away before their data is read if no more jobs can be queued
+    private boolean isAsync() {
+        boolean result = q("async").map(Boolean::parseBoolean).orElse(false);
+        if (result && _jobs.isFull()) unavailable();
+        return result;
+    }
+
+    // the data is already stored by now, so if the queue filled up while it was being read the artifacts are
+    // created right away rather than making the client upload everything again
+    private Object submit(Callable<List<Artifact>> ingest) throws IOException {
+        Optional<IngestJobs.Job> job = _jobs.submit(ingest);
+        if (job.isPresent()) return JobGetter.status(job.get());
+        try {
+            return ArtifactResponse.of(ingest.call());
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void unavailable() {
+        response().header("Retry-After", "1");
+        halt(HTTP_UNAVAILABLE, "Too many uploads in progress; try again later.");
+    }
+
+    // the multipart body is parsed as it arrives and each file part is hashed and written to the store in a
+    // single pass, without being spooled to a temp file first.  since form fields may follow the file parts,
+    // artifacts themselves are only created once the whole request has been read.
+    private Upload readUpload(boolean singleFile) throws IOException {
+        HttpServletRequest raw = request().raw();
+        if (!ServletFileUpload.isMultipartContent(raw)) halt(HTTP_MISSING_OR_BAD_PARAM, "Expected a multipart/form-data upload!");
+
+        Upload result = new Upload();
+        try {
+            FileItemIterator items = new ServletFileUpload().getItemIterator(raw);
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                try (InputStream in = item.openStream()) {
+                    if (item.isFormField()) {
+                        result.fields.put(item.getFieldName(), Streams.asString(in, "UTF-8"));
+                    } else if (singleFile ? ("file".equals(item.getFieldName()) && result.files.isEmpty()) : item.getName() != null) {
+                        result.files.add(new String[] { item.getName(), _store.store(in) });
+                    }
+                }
+            }
+        } catch (FileUploadException e) {
+            halt(HTTP_MISSING_OR_BAD_PARAM, "Unable to read upload: " + e.getMessage());
+        }
+        return result;
+    }
+
+    // form fields and stored files (as {name, hash}) read from an upload
+    private static class Upload {
+        final Map<String, String> fields = new java.util.HashMap<>();
+        final List<String[]> files = new java.util.ArrayList<>();
+
+        // fields may be provided as form fields or url parameters
+        Optional<String> field(String name) {
+            Optional<String> result = Optional.ofNullable(fields.get(name));
+            return result.isPresent() ? result : q(name);
+        }
+        Date fileTime() { return getFileTime(field("filetime")); }
+        Collection<String> tags() { return getTags(field("tags")); }
+    }
 }
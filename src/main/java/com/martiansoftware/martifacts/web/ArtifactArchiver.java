@@ -0,0 +1,114 @@
+package com.martiansoftware.martifacts.web;
+
+import static com.martiansoftware.boom.Boom.halt;
+import static com.martiansoftware.boom.Boom.q;
+import static com.martiansoftware.boom.Boom.response;
+import com.martiansoftware.martifacts.model.Artifact;
+import com.martiansoftware.martifacts.model.ArtifactStore;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Streams all artifacts matching a search (same syntax as /search) as a single
+ * tar or zip archive, writing each artifact's data directly to the response as
+ * the archive is produced.
+ *
+ * @author mlamb
+ */
+public class ArtifactArchiver {
+
+    private final ArtifactStore _store;
+
+    public ArtifactArchiver(ArtifactStore store) { _store = store; }
+
+    // e.g.: curl -G --data-urlencode "q=build:1234" -o build-1234.tar http://127.0.0.1:4567/archive
+    //       curl -G --data-urlencode "q=build:1234" -d format=zip -o build-1234.zip http://127.0.0.1:4567/archive
+    public Object archive() throws IOException {
+        String format = q("format").orElse("tar").toLowerCase();
+        if (!format.equals("tar") && !format.equals("zip")) halt(ArtifactAdder.HTTP_MISSING_OR_BAD_PARAM, String.format("Unsupported archive format '%s'", format));
+
+        List<Artifact> artifacts = new java.util.ArrayList<>(q("q").map(_store::findByQuery).orElseGet(_store::all));
+        String[] names = entryNames(artifacts);
+
+        HttpServletResponse raw = response().raw();
+        raw.setHeader("Content-Disposition", String.format("attachment; filename=\"martifacts.%s\"", format));
+        if (format.equals("tar")) {
+            raw.setContentType("application/x-tar");
+            raw.setContentLengthLong(TarWriter.lengthOf(names, artifacts.stream().mapToLong(Artifact::size).toArray()));
+            writeTar(artifacts, names, raw.getOutputStream());
+        } else {
+            raw.setContentType("application/zip");
+            writeZip(artifacts, names, raw.getOutputStream());
+        }
+        return ""; // response is already committed, so there's nothing left for spark to write
+    }
+
+    // artifact names don't have to be unique, but archive entries should be
+    private String[] entryNames(Collection<Artifact> artifacts) {
+        Set<String> used = new java.util.HashSet<>();
+        return artifacts.stream()
+                .map(a -> {
+                    String name = baseName(a.name()).orElse(a.id());
+                    return used.add(name) ? name : String.format("%s/%s", a.id(), name);
+                })
+                .toArray(String[]::new);
+    }
+
+    // names come from clients, so only the last path segment is used; otherwise an entry like "../../.bashrc"
+    // or "/etc/passwd" could be written outside the directory the archive is extracted into
+    static Optional<String> baseName(String name) {
+        String[] segments = name.split("[/\\\\]");
+        String result = segments.length == 0 ? "" : segments[segments.length - 1];
+        return (result.isEmpty() || result.equals(".") || result.equals("..")) ? Optional.empty() : Optional.of(result);
+    }
+
+    private void writeTar(List<Artifact> artifacts, String[] names, OutputStream out) throws IOException {
+        TarWriter tar = new TarWriter(out);
+        for (int i = 0; i < names.length; ++i) {
+            Artifact a = artifacts.get(i);
+            tar.putEntry(names[i], a.size(), a.time());
+            writeData(a, out);
+            tar.closeEntry();
+        }
+        tar.finish();
+    }
+
+    private void writeZip(List<Artifact> artifacts, String[] names, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (int i = 0; i < names.length; ++i) {
+            Artifact a = artifacts.get(i);
+            ZipEntry entry = new ZipEntry(names[i]);
+            entry.setTime(a.time().getTime());
+            zip.putNextEntry(entry);
+            try (InputStream in = a.inputStream()) {
+                IOUtils.copyLarge(in, zip);
+            }
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    private void writeData(Artifact a, OutputStream out) throws IOException {
+        Optional<FileChannel> ofc = a.channel();
+        if (ofc.isPresent()) {
+            try (FileChannel fc = ofc.get()) {
+                ChannelSender.send(fc, 0, a.size(), out);
+            }
+        } else {
+            try (InputStream in = a.inputStream()) {
+                IOUtils.copyLarge(in, out);
+            }
+        }
+    }
+}
@@ -8,7 +8,14 @@ import com.martiansoftware.boom.BoomResponse;
 import com.martiansoftware.boom.MimeType;
 import com.martiansoftware.martifacts.model.Artifact;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  *
@@ -16,15 +23,166 @@ import java.util.Optional;
  */
 public class ArtifactGetter {
 
+    private static final String BIN = "application/octet-stream";
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
     private final ArtifactStore _store;
-    
+
     public ArtifactGetter(ArtifactStore store) { _store = store; }
-    
+
     public Object get() throws IOException {
         Optional<Artifact> oa = _store.findById(request().params(":id"));
         if (!oa.isPresent()) halt(404);
         Artifact a = oa.get();
-        response().header("Content-Disposition", String.format("inline; filename=\"%s\"", a.name()));        
-        return new BoomResponse(a.inputStream()).as(MimeType.BIN);
+        HttpServletRequest req = request().raw();
+        HttpServletResponse raw = response().raw();
+
+        // artifacts stored compressed are sent as-is to clients that accept gzip.  that's a different
+        // representation of the artifact, so it gets its own entity tag.
+        Optional<FileChannel> ogz = acceptsGzip(req) ? a.gzipChannel() : Optional.empty();
+        try (FileChannel gz = ogz.orElse(null)) {
+            String etag = (gz == null) ? etagFor(a) : gzipEtagFor(a);
+
+            // artifacts never change once added, so they can be cached forever and revalidated without touching the blob
+            raw.setHeader("ETag", etag);
+            raw.setHeader("Vary", "Accept-Encoding");
+            raw.setDateHeader("Last-Modified", a.timeAdded().getTime());
+            raw.setHeader("Cache-Control", "public, max-age=31536000, immutable");
+            if (notModified(a, etag, req)) halt(HTTP_NOT_MODIFIED);
+
+            response().header("Content-Disposition", String.format("inline; filename=\"%s\"", a.name()));
+
+            if (gz != null) {
+                raw.setHeader("Content-Encoding", "gzip");
+                send(a, etag, gz, gz.size(), req, raw);
+                return ""; // response is already committed, so there's nothing left for spark to write
+            }
+        }
+
+        Optional<FileChannel> ofc = a.channel();
+        if (!ofc.isPresent()) return new BoomResponse(a.inputStream()).as(MimeType.BIN);
+
+        // file-backed artifacts are written straight to the response without passing through the heap,
+        // and support range requests via positional reads on the file
+        try (FileChannel fc = ofc.get()) {
+            send(a, etagFor(a), fc, a.size(), req, raw);
+        }
+        return ""; // response is already committed, so there's nothing left for spark to write
+    }
+
+    // strong validator for the artifact.  artifacts never change, so the hash is all we need.
+    static String etagFor(Artifact a) { return String.format("\"%s\"", a.hash()); }
+    static String gzipEtagFor(Artifact a) { return String.format("\"%s-gzip\"", a.hash()); }
+
+    // true if the client will accept a gzip content-encoding (i.e., it's listed without q=0)
+    private boolean acceptsGzip(HttpServletRequest req) {
+        String accept = req.getHeader("Accept-Encoding");
+        if (accept == null) return false;
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.trim().split("\\s*;\\s*");
+            if (!parts[0].equalsIgnoreCase("gzip")) continue;
+            for (int i = 1; i < parts.length; ++i) {
+                if (parts[i].matches("[qQ]\\s*=\\s*0(\\.0*)?")) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // sends the whole channel or any ranges of it requested by the client
+    private void send(Artifact a, String etag, FileChannel fc, long size, HttpServletRequest req, HttpServletResponse raw) throws IOException {
+        raw.setHeader("Accept-Ranges", "bytes");
+        List<ByteRange> ranges = requestedRanges(a, etag, size, req);
+        if (ranges == null) {
+            raw.setContentType(BIN);
+            raw.setContentLengthLong(size);
+            ChannelSender.send(fc, 0, size, raw.getOutputStream());
+        } else if (ranges.isEmpty()) {
+            raw.setHeader("Content-Range", "bytes */" + size);
+            halt(HTTP_RANGE_NOT_SATISFIABLE);
+        } else if (ranges.size() == 1) {
+            sendRange(fc, size, ranges.get(0), raw);
+        } else {
+            sendRanges(fc, size, ranges, raw);
+        }
+    }
+
+    // If-None-Match takes precedence over If-Modified-Since, per rfc 7232
+    private boolean notModified(Artifact a, String etag, HttpServletRequest req) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2); // weak comparison is fine for GET
+                if (tag.equals("*") || tag.equals(etag)) return true;
+            }
+            return false;
+        }
+        try {
+            long ims = req.getDateHeader("If-Modified-Since");
+            return ims != -1 && a.timeAdded().getTime() / 1000 <= ims / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // returns the ranges requested by the client, or null if the whole artifact should be sent
+    private List<ByteRange> requestedRanges(Artifact a, String etag, long size, HttpServletRequest req) {
+        String range = req.getHeader("Range");
+        if (range == null || !ifRangeMatches(a, etag, req)) return null;
+        try {
+            return ByteRange.parse(range, size);
+        } catch (IllegalArgumentException e) {
+            return null; // rfc 7233 says to ignore a Range header we don't understand
+        }
+    }
+
+    // If-Range may hold either an entity tag or a date
+    private boolean ifRangeMatches(Artifact a, String etag, HttpServletRequest req) {
+        String ifRange = req.getHeader("If-Range");
+        if (ifRange == null) return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) return etag.equals(ifRange); // weak tags never match
+        try {
+            return req.getDateHeader("If-Range") / 1000 == a.timeAdded().getTime() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private void sendRange(FileChannel fc, long size, ByteRange r, HttpServletResponse raw) throws IOException {
+        raw.setStatus(HTTP_PARTIAL_CONTENT);
+        raw.setContentType(BIN);
+        raw.setHeader("Content-Range", r.contentRange(size));
+        raw.setContentLengthLong(r.length());
+        ChannelSender.send(fc, r.first, r.length(), raw.getOutputStream());
+    }
+
+    private void sendRanges(FileChannel fc, long size, List<ByteRange> ranges, HttpServletResponse raw) throws IOException {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new java.util.ArrayList<>(ranges.size());
+        byte[] trailer = String.format("\r\n--%s--\r\n", boundary).getBytes(StandardCharsets.US_ASCII);
+
+        long contentLength = trailer.length;
+        for (ByteRange r : ranges) {
+            byte[] ph = String.format("\r\n--%s\r\nContent-Type: %s\r\nContent-Range: %s\r\n\r\n", boundary, BIN, r.contentRange(size))
+                            .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(ph);
+            contentLength += ph.length + r.length();
+        }
+
+        raw.setStatus(HTTP_PARTIAL_CONTENT);
+        raw.setContentType("multipart/byteranges; boundary=" + boundary);
+        raw.setContentLengthLong(contentLength);
+        OutputStream out = raw.getOutputStream();
+        for (int i = 0; i < ranges.size(); ++i) {
+            ByteRange r = ranges.get(i);
+            out.write(partHeaders.get(i));
+            ChannelSender.send(fc, r.first, r.length(), out);
+        }
+        out.write(trailer);
+        out.flush();
     }
 }
@@ -0,0 +1,70 @@
+package com.martiansoftware.martifacts.web;
+
+import com.martiansoftware.boom.Boom;
+import static com.martiansoftware.boom.Boom.halt;
+import static com.martiansoftware.boom.Boom.q;
+import static com.martiansoftware.boom.Boom.request;
+import com.martiansoftware.martifacts.model.Artifact;
+import com.martiansoftware.martifacts.model.ArtifactStore;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Lets clients that already know an artifact's hash avoid uploading data the
+ * server already has: check for the hash first, and if it's present, create
+ * the new artifact by hash instead of uploading the file.
+ *
+ * @author mlamb
+ */
+public class ArtifactHashAdder {
+
+    private static final Pattern SHA1 = Pattern.compile("^\\p{XDigit}{40}$");
+    private final ArtifactStore _store;
+
+    public ArtifactHashAdder(ArtifactStore store) { _store = store; }
+
+    private String getHash(String hash) {
+        if (hash == null || !SHA1.matcher(hash).matches()) halt(ArtifactAdder.HTTP_MISSING_OR_BAD_PARAM, String.format("Invalid sha1 '%s'", hash));
+        return hash.toLowerCase();
+    }
+
+    private Optional<Long> getSize() {
+        Optional<String> sizeS = q("size");
+        try {
+            return sizeS.map(Long::parseLong);
+        } catch (NumberFormatException e) {
+            halt(ArtifactAdder.HTTP_MISSING_OR_BAD_PARAM, String.format("Unable to parse size '%s'", sizeS.get()));
+            return null; // unreachable due to halt, included to appease compiler
+        }
+    }
+
+    // returns the stored size if the data is present (and has the expected size, if one was provided)
+    private long getStoredSize(String hash) throws IOException {
+        Optional<Long> size = getSize();
+        Optional<Long> storedSize = _store.dataSize(hash);
+        if (!storedSize.isPresent() || (size.isPresent() && !size.equals(storedSize))) halt(404);
+        return storedSize.get();
+    }
+
+    // e.g.: curl -f "http://127.0.0.1:4567/check/71bf590175487ccc49172362955d0de7729e9fb4?size=14"
+    public Object check() throws IOException {
+        String hash = getHash(request().params(":sha1"));
+        return Boom.text(String.format("%s %d\n", hash, getStoredSize(hash)));
+    }
+
+    // e.g.: curl -H "ACCEPT: text/plain" -d sha1=71bf590175487ccc49172362955d0de7729e9fb4 -d size=14 -d name=testdisk.log -d "tags=tag1 tag2" http://127.0.0.1:4567/addbyhash
+    public Object add() throws IOException {
+        String hash = getHash(q("sha1").orElse(null));
+        Optional<String> name = q("name");
+        if (!name.isPresent()) halt(ArtifactAdder.HTTP_MISSING_OR_BAD_PARAM, "No name provided!");
+        getStoredSize(hash);
+
+        Optional<Artifact> oa = _store.createFromHash(name.get(),
+                                                      hash,
+                                                      ArtifactAdder.getFileTime(q("filetime")),
+                                                      ArtifactAdder.getTags(q("tags")));
+        if (!oa.isPresent()) halt(404);
+        return ArtifactResponse.of(oa);
+    }
+}
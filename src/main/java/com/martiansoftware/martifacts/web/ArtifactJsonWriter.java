@@ -0,0 +1,108 @@
+package com.martiansoftware.martifacts.web;
+
+import com.martiansoftware.martifacts.model.Artifact;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes artifacts as a JSON array directly to a Writer, one artifact at a
+ * time, without building any intermediate maps or strings.
+ *
+ * The output matches what Boom.json produces for Artifact.asMap() plus url:
+ * keys in sorted order, and dates in the default Gson (US locale) format.
+ *
+ * @author mlamb
+ */
+class ArtifactJsonWriter {
+
+    private final Writer _out;
+    private final String _urlPrefix;
+    private final DateFormat _dateFormat = DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, Locale.US);
+
+    /**
+     * @param out the Writer to write to
+     * @param urlPrefix the prefix of each artifact's url (to which the artifact id is appended), or null for no url
+     */
+    ArtifactJsonWriter(Writer out, String urlPrefix) {
+        _out = out;
+        _urlPrefix = urlPrefix;
+    }
+
+    void write(Iterable<Artifact> artifacts) throws IOException {
+        _out.write('[');
+        boolean first = true;
+        for (Artifact a : artifacts) {
+            if (!first) _out.write(',');
+            first = false;
+            write(a);
+        }
+        _out.write(']');
+    }
+
+    private void write(Artifact a) throws IOException {
+        _out.write("{\"addedtime\":");
+        date(a.timeAdded());
+        _out.write(",\"filetime\":");
+        date(a.time());
+        _out.write(",\"id\":");
+        string(a.id());
+        _out.write(",\"name\":");
+        string(a.name());
+        _out.write(",\"sha1\":");
+        string(a.hash());
+        _out.write(",\"size\":");
+        _out.write(Long.toString(a.size()));
+        _out.write(",\"tags\":[");
+        boolean first = true;
+        for (String tag : a.tags()) {
+            if (!first) _out.write(',');
+            first = false;
+            string(tag);
+        }
+        _out.write(']');
+        if (_urlPrefix != null) {
+            _out.write(",\"url\":\"");
+            escape(_urlPrefix);
+            escape(a.id());
+            _out.write('"');
+        }
+        _out.write('}');
+    }
+
+    private void date(Date d) throws IOException {
+        if (d == null) _out.write("null");
+        else string(_dateFormat.format(d));
+    }
+
+    private void string(String s) throws IOException {
+        if (s == null) {
+            _out.write("null");
+        } else {
+            _out.write('"');
+            escape(s);
+            _out.write('"');
+        }
+    }
+
+    private void escape(String s) throws IOException {
+        int start = 0, len = s.length();
+        for (int i = 0; i < len; ++i) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') continue;
+            _out.write(s, start, i - start);
+            switch (c) {
+                case '"': _out.write("\\\""); break;
+                case '\\': _out.write("\\\\"); break;
+                case '\n': _out.write("\\n"); break;
+                case '\r': _out.write("\\r"); break;
+                case '\t': _out.write("\\t"); break;
+                default: _out.write(String.format("\\u%04x", (int) c));
+            }
+            start = i + 1;
+        }
+        _out.write(s, start, len - start);
+    }
+}
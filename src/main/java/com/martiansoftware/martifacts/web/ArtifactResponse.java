@@ -1,49 +1,52 @@
 package com.martiansoftware.martifacts.web;
 
 import com.martiansoftware.boom.Boom;
-import static com.martiansoftware.boom.Boom.json;
-import static com.martiansoftware.boom.Boom.text;
-import com.martiansoftware.boom.BoomResponse;
+import static com.martiansoftware.boom.Boom.response;
 import com.martiansoftware.boom.MimeType;
 import com.martiansoftware.martifacts.model.Artifact;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletResponse;
 
 /**
+ * Writes artifact lists (as json or a text table, depending upon what the
+ * client prefers) directly to the response as they are serialized.
  *
  * @author mlamb
  */
 public class ArtifactResponse {
-    
-    public static BoomResponse of(Artifact artifact) {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static Object of(Artifact artifact) throws IOException {
         return of(artifact == null ? Collections.EMPTY_LIST : Arrays.asList(artifact));
     }
-    
-    public static BoomResponse of(Optional<Artifact> oartifact) {
-        return oartifact.map(a -> of(a)).orElse(of((Artifact) null));
-    }
-    
-    public static BoomResponse of(Collection<Artifact> artifacts) {
-        MimeType mt = Boom.preferredEncodingOf(MimeType.JSON, MimeType.TEXT);        
-        return mt == MimeType.JSON ? json(artifacts) : text(artifacts);
-    }
-    
-    private Map<String, Object> asMap(Artifact a) {
-        Map<String, Object> result = a.asMap();
-        result.put("url", AppRootHelper.get().map(url -> String.format("%s/get/%s", url, a.id())).orElse(null));
-        return result;
-    }
-    
-    private static BoomResponse json(Collection<Artifact> artifacts) {
-        return Boom.json(artifacts.stream().map(a -> new ArtifactWithUrl(a).asMap()).collect(Collectors.toList()));
+
+    public static Object of(Optional<Artifact> oartifact) throws IOException {
+        return of(oartifact.orElse(null));
     }
-    
-    private static BoomResponse text(Collection<Artifact> artifacts) {
-        Collection<ArtifactWithUrl> au = artifacts.stream().map(a -> new ArtifactWithUrl(a)).collect(Collectors.toList());
-        return Boom.text(ArtifactTextFormatter.format(au));
+
+    public static Object of(Collection<Artifact> artifacts) throws IOException {
+        MimeType mt = Boom.preferredEncodingOf(MimeType.JSON, MimeType.TEXT);
+        String urlPrefix = AppRootHelper.get().map(url -> url + "/get/").orElse(null);
+
+        HttpServletResponse raw = response().raw();
+        raw.setCharacterEncoding("UTF-8");
+        raw.setContentType(mt == MimeType.JSON ? "application/json" : "text/plain");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(raw.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            if (mt == MimeType.JSON) {
+                new ArtifactJsonWriter(out, urlPrefix).write(artifacts);
+            } else {
+                ArtifactTextFormatter.format(artifacts, urlPrefix, out);
+            }
+        }
+        return ""; // response is already committed, so there's nothing left for spark to write
     }
 }
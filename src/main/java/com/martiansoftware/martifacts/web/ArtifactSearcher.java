@@ -1,7 +1,13 @@
 package com.martiansoftware.martifacts.web;
 
 import com.martiansoftware.martifacts.model.ArtifactStore;
+import static com.martiansoftware.boom.Boom.halt;
 import static com.martiansoftware.boom.Boom.q;
+import static com.martiansoftware.boom.Boom.response;
+import com.martiansoftware.martifacts.model.Cursor;
+import com.martiansoftware.martifacts.model.Page;
+import java.io.IOException;
+import java.util.Optional;
 
 /**
  *
@@ -13,8 +19,49 @@ public class ArtifactSearcher {
 
     public ArtifactSearcher(ArtifactStore store) { _store = store; }
 
-    public Object search() {
-        return ArtifactResponse.of(q("q").map(_store::findByQuery).orElse(_store.all()));
+    // e.g.: curl "http://127.0.0.1:4567/search?q=nightly&limit=100&count=true"
+    //       curl "http://127.0.0.1:4567/search?q=nightly&facets=true"
+    //
+    // if a limit is specified, results are paged.  the cursor for the next page (if there might be one) is
+    // returned in the X-Next-Cursor header, to be passed back as the "after" parameter.  if count=true,
+    // the total number of matches is returned in the X-Total-Count header.
+    //
+    // if facets=true, the tags of all matches are returned along with the number of matches having
+    // each (in the same format as /tagstats) instead of the matches themselves.
+    public Object search() throws IOException {
+        String query = q("q").orElse("");
+        if (q("count").map(Boolean::parseBoolean).orElse(false)) {
+            response().header("X-Total-Count", String.valueOf(_store.countByQuery(query)));
+        }
+        if (q("facets").map(Boolean::parseBoolean).orElse(false)) return TagStatsGetter.of(_store.facets(query));
+
+        Optional<Integer> limit = getInt("limit");
+        if (!limit.isPresent()) return ArtifactResponse.of(q("q").map(_store::findByQuery).orElseGet(_store::all));
+        if (limit.get() < 1) halt(ArtifactAdder.HTTP_MISSING_OR_BAD_PARAM, "limit must be positive");
+
+        Page page = _store.findByQuery(query, getCursor("after"), limit.get());
+        page.next().ifPresent(c -> response().header("X-Next-Cursor", c.toString()));
+        return ArtifactResponse.of(page.artifacts());
+    }
+
+    private Optional<Integer> getInt(String param) {
+        Optional<String> s = q(param);
+        try {
+            return s.map(Integer::parseInt);
+        } catch (NumberFormatException e) {
+            halt(ArtifactAdder.HTTP_MISSING_OR_BAD_PARAM, String.format("Unable to parse %s '%s'", param, s.get()));
+            return null; // unreachable due to halt, included to appease compiler
+        }
+    }
+
+    private Optional<Cursor> getCursor(String param) {
+        Optional<String> s = q(param);
+        try {
+            return s.map(Cursor::parse);
+        } catch (IllegalArgumentException e) {
+            halt(ArtifactAdder.HTTP_MISSING_OR_BAD_PARAM, String.format("Invalid %s '%s'", param, s.get()));
+            return null; // unreachable due to halt, included to appease compiler
+        }
     }
 
 }
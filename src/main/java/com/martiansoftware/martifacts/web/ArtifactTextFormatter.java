@@ -1,6 +1,8 @@
 package com.martiansoftware.martifacts.web;
 
 import com.martiansoftware.martifacts.model.Artifact;
+import java.io.IOException;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.stream.Collectors;
@@ -11,19 +13,27 @@ import java.util.stream.Collectors;
  */
 public class ArtifactTextFormatter {
 
-    private static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
-    
-    private static final TableFormatter<ArtifactWithUrl> _formatter =
-        new TableFormatter<ArtifactWithUrl>()
+    // formatters are built per call since SimpleDateFormat isn't thread safe
+    private static TableFormatter<Artifact> formatter(String urlPrefix) {
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        return new TableFormatter<Artifact>()
             .left("ID", a -> a.id())
             .left("TIME", a-> sdf.format(a.time()))
-            .right("SIZE", a -> String.format("%d", a.size()))
+            .right("SIZE", a -> Long.toString(a.size()))
             .left("NAME", a -> a.name())
             .left("", a -> "#")
             .left("TAGS", a -> a.tags().stream().collect(Collectors.joining(" ")))
-            .left("URL", a -> a.url());
-            
-    public static String format(Collection<ArtifactWithUrl> artifacts) {
-        return _formatter.format(artifacts);
+            .left("URL", a -> urlPrefix == null ? null : urlPrefix + a.id());
+    }
+
+    /**
+     * Writes a table of the specified artifacts to the specified Writer
+     * @param artifacts the artifacts to write
+     * @param urlPrefix the prefix of each artifact's url (to which the artifact id is appended), or null for no url
+     * @param out the Writer to write to
+     * @throws IOException if the table cannot be written
+     */
+    public static void format(Collection<Artifact> artifacts, String urlPrefix, Writer out) throws IOException {
+        formatter(urlPrefix).format(artifacts, out);
     }
 }
@@ -0,0 +1,67 @@
+package com.martiansoftware.martifacts.web;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single inclusive range of bytes requested via an HTTP "Range" header.
+ *
+ * @author mlamb
+ */
+class ByteRange {
+
+    private static final Pattern RANGE_SPEC = Pattern.compile("^(?<first>[0-9]*)-(?<last>[0-9]*)$");
+    private static final int MAX_RANGES = 32; // more than this is more likely abuse than a download tool
+
+    final long first, last; // inclusive, per rfc 7233
+
+    ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    long length() { return last - first + 1; }
+
+    String contentRange(long size) { return String.format("bytes %d-%d/%d", first, last, size); }
+
+    /**
+     * Parses the value of a "Range" header for a resource of the specified size.
+     *
+     * @param header the value of the Range header (e.g. "bytes=0-499,-500")
+     * @param size the size of the resource being requested
+     * @return the satisfiable ranges requested, in the order requested.  If the
+     *         list is empty, none of the requested ranges can be satisfied.
+     * @throws IllegalArgumentException if the header is malformed, in which case
+     *         it should be ignored and the whole resource returned
+     */
+    static List<ByteRange> parse(String header, long size) {
+        String h = header.trim();
+        if (!h.toLowerCase().startsWith("bytes=")) throw new IllegalArgumentException("Unsupported range unit: '" + header + "'");
+
+        String[] specs = h.substring("bytes=".length()).split(",");
+        if (specs.length > MAX_RANGES) throw new IllegalArgumentException("Too many ranges requested: " + specs.length);
+
+        List<ByteRange> result = new java.util.ArrayList<>();
+        for (String spec : specs) {
+            Matcher m = RANGE_SPEC.matcher(spec.trim());
+            if (!m.matches()) throw new IllegalArgumentException("Invalid range: '" + spec + "'");
+            String first = m.group("first"), last = m.group("last");
+
+            if (first.isEmpty()) {                                  // suffix range, e.g. "-500" for the last 500 bytes
+                if (last.isEmpty()) throw new IllegalArgumentException("Invalid range: '" + spec + "'");
+                long n = Long.parseLong(last);
+                if (n > 0 && size > 0) result.add(new ByteRange(Math.max(0, size - n), size - 1));
+            } else {
+                long f = Long.parseLong(first);
+                long l = last.isEmpty() ? size - 1 : Long.parseLong(last);
+                if (!last.isEmpty() && l < f) throw new IllegalArgumentException("Invalid range: '" + spec + "'");
+                if (f < size) result.add(new ByteRange(f, Math.min(l, size - 1)));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override public String toString() { return String.format("[%d, %d]", first, last); }
+}
@@ -0,0 +1,54 @@
+package com.martiansoftware.martifacts.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import org.eclipse.jetty.server.HttpOutput;
+
+/**
+ * Sends regions of a FileChannel to a response OutputStream without copying
+ * the data through the heap.
+ *
+ * When writing to jetty, the file is memory-mapped in windows and handed
+ * directly to jetty's output (the same way jetty serves static files), which
+ * lets the kernel move the bytes.  Any other OutputStream falls back to
+ * FileChannel.transferTo().
+ *
+ * @author mlamb
+ */
+class ChannelSender {
+
+    private static final long MAP_WINDOW = 64 * 1024 * 1024;
+
+    /**
+     * Sends count bytes of the specified channel, starting at position, to the
+     * specified OutputStream.
+     *
+     * @param fc the channel to send
+     * @param position the position within the channel to start sending from
+     * @param count the number of bytes to send
+     * @param out where to send 'em
+     * @throws IOException
+     */
+    static void send(FileChannel fc, long position, long count, OutputStream out) throws IOException {
+        long end = position + count;
+        if (out instanceof HttpOutput) {
+            HttpOutput hout = (HttpOutput) out;
+            for (long pos = position; pos < end; pos += MAP_WINDOW) {
+                MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_WINDOW, end - pos));
+                hout.write(buf);
+            }
+        } else {
+            WritableByteChannel wbc = Channels.newChannel(out);
+            for (long pos = position; pos < end;) {
+                long n = fc.transferTo(pos, end - pos, wbc);
+                if (n <= 0) throw new IOException("Unexpected end of file at position " + pos);
+                pos += n;
+            }
+        }
+        out.flush();
+    }
+}
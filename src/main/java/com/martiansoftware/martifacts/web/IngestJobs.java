@@ -0,0 +1,140 @@
+package com.martiansoftware.martifacts.web;
+
+import com.martiansoftware.martifacts.model.Artifact;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the database side of asynchronous uploads (creating artifacts for data
+ * that has already been stored) on a small pool of threads, so that bursts of
+ * uploads don't hold request threads while their artifacts are committed.
+ * Each upload gets a job whose status can be checked later.  Only a bounded
+ * number of jobs may wait; beyond that, new jobs are rejected so clients can
+ * back off and retry.
+ *
+ * @author mlamb
+ */
+public class IngestJobs {
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    public static class Job {
+        private final String _id;
+        private volatile Status _status = Status.QUEUED;
+        private volatile List<Artifact> _artifacts = Collections.EMPTY_LIST;
+        private volatile String _error = null;
+
+        private Job(String id) { _id = id; }
+
+        public String id() { return _id; }
+        public Status status() { return _status; }
+        public List<Artifact> artifacts() { return _artifacts; }
+        public String error() { return _error; }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(IngestJobs.class);
+    private final ThreadPoolExecutor _executor;
+    private final Map<String, Job> _jobs; // the most recently submitted jobs, so their status can be checked
+    private final AtomicLong _rejected = new AtomicLong(), _done = new AtomicLong(), _failed = new AtomicLong();
+
+    /**
+     * Creates a new IngestJobs
+     * @param threads the number of jobs to run at once
+     * @param maxQueued the number of jobs that may wait to run before new jobs are rejected
+     * @param maxRemembered the number of jobs (most recent first) whose status is remembered
+     */
+    public IngestJobs(int threads, int maxQueued, int maxRemembered) {
+        AtomicInteger n = new AtomicInteger();
+        _executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                            new java.util.concurrent.ArrayBlockingQueue<>(maxQueued),
+                                            r -> {
+                                                Thread t = new Thread(r, "martifacts-ingest-" + n.incrementAndGet());
+                                                t.setDaemon(true);
+                                                return t;
+                                            });
+        _jobs = new java.util.LinkedHashMap<String, Job>() {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) { return size() > maxRemembered; }
+        };
+    }
+
+    /**
+     * Returns true if no more jobs can be queued right now.  Lets uploads be
+     * turned away before their data is read.
+     * @return true if no more jobs can be queued right now
+     */
+    public boolean isFull() {
+        return _executor.getQueue().remainingCapacity() == 0;
+    }
+
+    /**
+     * Queues a job
+     * @param ingest creates the job's artifacts
+     * @return the new job, or nothing if the queue is full
+     */
+    public Optional<Job> submit(Callable<List<Artifact>> ingest) {
+        Job job = new Job(UUID.randomUUID().toString());
+        synchronized (_jobs) {
+            _jobs.put(job.id(), job);
+        }
+        try {
+            _executor.execute(() -> run(job, ingest));
+            return Optional.of(job);
+        } catch (RejectedExecutionException e) {
+            synchronized (_jobs) {
+                _jobs.remove(job.id());
+            }
+            _rejected.incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns the job with the specified id, if it is remembered
+     * @param id the id of the job
+     * @return the job with the specified id, if it is remembered
+     */
+    public Optional<Job> get(String id) {
+        synchronized (_jobs) {
+            return Optional.ofNullable(_jobs.get(id));
+        }
+    }
+
+    /**
+     * Returns the number of jobs queued, running, done, failed, and rejected
+     * @return ingest statistics, by name
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new java.util.TreeMap<>();
+        result.put("ingest.queued", _executor.getQueue().size());
+        result.put("ingest.running", _executor.getActiveCount());
+        result.put("ingest.done", _done.get());
+        result.put("ingest.failed", _failed.get());
+        result.put("ingest.rejected", _rejected.get());
+        return result;
+    }
+
+    private void run(Job job, Callable<List<Artifact>> ingest) {
+        job._status = Status.RUNNING;
+        try {
+            job._artifacts = Collections.unmodifiableList(ingest.call());
+            _done.incrementAndGet();
+            job._status = Status.DONE;
+        } catch (Exception e) {
+            log.warn("Ingest job {} failed: {}", job.id(), e.toString());
+            job._error = e.getMessage() == null ? e.toString() : e.getMessage();
+            _failed.incrementAndGet();
+            job._status = Status.FAILED;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.martiansoftware.martifacts.web;
+
+import com.martiansoftware.boom.Boom;
+import static com.martiansoftware.boom.Boom.halt;
+import static com.martiansoftware.boom.Boom.q;
+import static com.martiansoftware.boom.Boom.response;
+import com.martiansoftware.boom.MimeType;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Reports the status of asynchronous uploads (see IngestJobs).  Once a job is
+ * done, the response is the same as the synchronous upload would have been.
+ *
+ * @author mlamb
+ */
+public class JobGetter {
+
+    static final int HTTP_ACCEPTED = 202;
+    private final IngestJobs _jobs;
+
+    public JobGetter(IngestJobs jobs) { _jobs = jobs; }
+
+    // e.g.: curl -H "ACCEPT: text/plain" "http://127.0.0.1:4567/job?id=0c1b4c8e-8d0e-4d35-9b6a-2f5a0e5f4f0a"
+    public Object get() throws IOException {
+        Optional<IngestJobs.Job> ojob = q("id").flatMap(_jobs::get);
+        if (!ojob.isPresent()) halt(404);
+        IngestJobs.Job job = ojob.get();
+        switch (job.status()) {
+            case DONE: return ArtifactResponse.of(job.artifacts());
+            case FAILED: halt(500, String.format("Job %s failed: %s", job.id(), job.error()));
+            default: return status(job);
+        }
+    }
+
+    /**
+     * Responds with the id, status, and status url of a job that isn't done yet
+     * @param job the job to describe
+     * @return the response
+     */
+    static Object status(IngestJobs.Job job) {
+        response().status(HTTP_ACCEPTED);
+        Map<String, Object> result = new java.util.TreeMap<>();
+        result.put("id", job.id());
+        result.put("status", job.status().name().toLowerCase());
+        AppRootHelper.get().ifPresent(url -> result.put("url", url + "/job?id=" + job.id()));
+
+        if (MimeType.JSON == Boom.preferredEncodingOf(MimeType.JSON, MimeType.TEXT)) {
+            return Boom.json(result);
+        } else {
+            return Boom.text(result.entrySet().stream().map(e -> String.format("%s: %s\n", e.getKey(), e.getValue())).collect(Collectors.joining()));
+        }
+    }
+}
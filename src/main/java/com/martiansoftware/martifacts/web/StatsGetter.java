@@ -0,0 +1,34 @@
+package com.martiansoftware.martifacts.web;
+
+import com.martiansoftware.boom.Boom;
+import com.martiansoftware.boom.MimeType;
+import com.martiansoftware.martifacts.model.ArtifactStore;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ *
+ * @author mlamb
+ */
+public class StatsGetter {
+
+    private final ArtifactStore _store;
+    private final IngestJobs _jobs;
+
+    public StatsGetter(ArtifactStore store, IngestJobs jobs) {
+        _store = store;
+        _jobs = jobs;
+    }
+
+    // e.g.: curl http://127.0.0.1:4567/stats
+    public Object stats() {
+        Map<String, Object> result = new java.util.TreeMap<>(_store.stats());
+        result.putAll(_jobs.stats());
+
+        if (MimeType.JSON == Boom.preferredEncodingOf(MimeType.JSON, MimeType.TEXT)) {
+            return Boom.json(result);
+        } else {
+            return Boom.text(result.entrySet().stream().map(e -> String.format("%s: %s\n", e.getKey(), e.getValue())).collect(Collectors.joining()));
+        }
+    }
+}
@@ -1,19 +1,22 @@
 package com.martiansoftware.martifacts.web;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
  *
  * @author mlamb
  */
 public class TableFormatter<T> {
-    
+
     private enum Justification {LEFT, RIGHT};
     private final List<Renderer<T>> _renderers = new java.util.ArrayList<>();
-    
+
     public TableFormatter<T> left(String columnName, Function<T, String> columnRenderer) {
         _renderers.add(new Renderer(columnName, columnRenderer, Justification.LEFT, _renderers.size()));
         return this;
@@ -25,16 +28,37 @@ public class TableFormatter<T> {
     }
 
     public String format(Collection<T> items) {
+        StringWriter sw = new StringWriter();
+        try {
+            format(items, sw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // can't happen with a StringWriter
+        }
+        return sw.toString();
+    }
+
+    // two passes over the items: one to compute column widths, one to write rows as they are rendered
+    public void format(Collection<T> items, Writer out) throws IOException {
         int[] widths = computeWidths(items);
-        StringBuilder sb = new StringBuilder();
-        
-        sb.append(_renderers.stream().map(r ->  r.renderTitle(widths[r.index])).collect(Collectors.joining(" "))).append("\n");
-        items.stream().forEach(i ->
-            sb.append(_renderers.stream().map(r -> r.render(i, widths[r.index])).collect(Collectors.joining(" "))).append("\n")
-        );
-        return sb.toString();
+        String[] cells = new String[_renderers.size()];
+
+        for (Renderer<T> r : _renderers) cells[r.index] = r.title;
+        writeRow(cells, widths, out);
+        for (T item : items) {
+            for (Renderer<T> r : _renderers) cells[r.index] = r.renderFunction.apply(item);
+            writeRow(cells, widths, out);
+        }
+        out.flush();
     }
-    
+
+    private void writeRow(String[] cells, int[] widths, Writer out) throws IOException {
+        for (Renderer<T> r : _renderers) {
+            if (r.index > 0) out.write(' ');
+            r.write(cells[r.index], widths[r.index], out);
+        }
+        out.write('\n');
+    }
+
     private int[] computeWidths(Collection<T> items) {
         int[] w = new int[_renderers.size()];
         _renderers.stream().forEach(r -> w[r.index] = r.title.length());
@@ -43,30 +67,30 @@ public class TableFormatter<T> {
         );
         return w;
     }
-    
+
     private class Renderer<T> {
         final String title;
         final Function<T, String> renderFunction;
         final Justification justification;
         final int index;
-        
+
         Renderer(String title, Function<T, String> renderFunction, Justification justification, int index) {
             this.title = title == null ? "" : title;
             this.justification = justification;
             this.renderFunction = renderFunction;
             this.index = index;
         }
-        
-        String fmt(int width) { // create a format string with the right width and justification
-            return String.format("%%%s%ds", justification == Justification.LEFT ? "-" : "", Math.max(width, 1));
-        }
-        
-        String renderTitle(int width) {
-            return String.format(fmt(width), title);
+
+        void write(String s, int width, Writer out) throws IOException {
+            if (s == null) s = "null"; // as String.format would have rendered it
+            int pad = Math.max(width, 1) - s.length();
+            if (justification == Justification.RIGHT) spaces(pad, out);
+            out.write(s);
+            if (justification == Justification.LEFT) spaces(pad, out);
         }
-        
-        String render(T t, int width) {
-            return String.format(fmt(width), renderFunction.apply(t));
+
+        private void spaces(int n, Writer out) throws IOException {
+            for (int i = 0; i < n; ++i) out.write(' ');
         }
     }
 }
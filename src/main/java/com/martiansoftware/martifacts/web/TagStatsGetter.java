@@ -17,13 +17,15 @@ public class TagStatsGetter {
     public TagStatsGetter(ArtifactStore store) { _store = store; }
 
     public Object tagstats() {
-        Map<String, Long> result = _store.tagStats();
+        return of(_store.tagStats());
+    }
 
+    // tag counts as json or text, depending upon what the client prefers
+    static Object of(Map<String, Long> tagCounts) {
         if (MimeType.JSON == Boom.preferredEncodingOf(MimeType.JSON, MimeType.TEXT)) {
-            return Boom.json(result);
+            return Boom.json(tagCounts);
         } else {
-            return Boom.text(result.entrySet().stream().map(e -> String.format("%s: %d\n", e.getKey(), e.getValue())).collect(Collectors.joining()));
+            return Boom.text(tagCounts.entrySet().stream().map(e -> String.format("%s: %d\n", e.getKey(), e.getValue())).collect(Collectors.joining()));
         }
-
     }
 }
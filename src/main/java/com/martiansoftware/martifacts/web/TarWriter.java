@@ -0,0 +1,107 @@
+package com.martiansoftware.martifacts.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Writes a (ustar) tar stream directly to an OutputStream, one entry at a time.
+ * Entry data is written by the caller straight to the underlying stream
+ * between putEntry() and closeEntry(), so nothing is buffered.
+ *
+ * Names longer than 100 bytes use a GNU long name entry, and sizes too large
+ * for the octal size field use GNU base-256 encoding.
+ *
+ * @author mlamb
+ */
+class TarWriter {
+
+    private static final int BLOCK = 512;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final String LONG_LINK = "././@LongLink";
+
+    private final OutputStream _out;
+    private long _entrySize = 0;
+
+    TarWriter(OutputStream out) { _out = out; }
+
+    /**
+     * Computes the exact size of the tar stream for the specified entries
+     * @param names the names of the entries
+     * @param sizes the sizes of the entries
+     * @return the total number of bytes the tar stream will contain
+     */
+    static long lengthOf(String[] names, long[] sizes) {
+        long result = 2 * BLOCK; // end of archive marker
+        for (int i = 0; i < names.length; ++i) {
+            int nameLength = utf8(names[i]).length;
+            if (nameLength > 100) result += BLOCK + padded(nameLength + 1);
+            result += BLOCK + padded(sizes[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the header for a new entry.  Exactly size bytes must then be
+     * written to the underlying stream before calling closeEntry().
+     */
+    void putEntry(String name, long size, Date mtime) throws IOException {
+        byte[] nameBytes = utf8(name);
+        if (nameBytes.length > 100) {
+            byte[] longName = java.util.Arrays.copyOf(nameBytes, nameBytes.length + 1); // nul-terminated
+            _out.write(header(utf8(LONG_LINK), longName.length, mtime, 'L'));
+            _out.write(longName);
+            pad(longName.length);
+        }
+        _out.write(header(nameBytes, size, mtime, '0'));
+        _entrySize = size;
+    }
+
+    void closeEntry() throws IOException {
+        pad(_entrySize);
+    }
+
+    void finish() throws IOException {
+        _out.write(new byte[2 * BLOCK]);
+        _out.flush();
+    }
+
+    private static byte[] utf8(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+    private static long padded(long size) { return (size + BLOCK - 1) / BLOCK * BLOCK; }
+
+    private void pad(long size) throws IOException {
+        int n = (int) (padded(size) - size);
+        if (n > 0) _out.write(new byte[n]);
+    }
+
+    private static byte[] header(byte[] name, long size, Date mtime, char type) {
+        byte[] h = new byte[BLOCK];
+        System.arraycopy(name, 0, h, 0, Math.min(name.length, 100));
+        octal(h, 100, 8, 0644);                      // mode
+        octal(h, 108, 8, 0);                         // uid
+        octal(h, 116, 8, 0);                         // gid
+        if (size <= MAX_OCTAL_SIZE) {
+            octal(h, 124, 12, size);
+        } else {                                     // gnu base-256 size
+            h[124] = (byte) 0x80;
+            for (int i = 135; i > 124; --i, size >>>= 8) h[i] = (byte) size;
+        }
+        octal(h, 136, 12, mtime.getTime() / 1000);
+        h[156] = (byte) type;
+        System.arraycopy(utf8("ustar\0" + "00"), 0, h, 257, 8);
+
+        for (int i = 148; i < 156; ++i) h[i] = ' '; // checksum is computed with its own field as spaces
+        long sum = 0;
+        for (byte b : h) sum += b & 0xff;
+        octal(h, 148, 7, sum);
+        return h;
+    }
+
+    // writes a nul-terminated, zero-padded octal number in a field of the specified length
+    private static void octal(byte[] h, int offset, int length, long value) {
+        String s = String.format("%0" + (length - 1) + "o", value);
+        System.arraycopy(utf8(s), 0, h, offset, length - 1);
+        h[offset + length - 1] = 0;
+    }
+}
@@ -3,6 +3,8 @@ package com.martiansoftware.time;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
@@ -57,6 +59,17 @@ public class DateRange {
     
     public LocalDate from() { return _from; }
     public LocalDate to() { return _to; }
+
+    /**
+     * Returns true if the specified time falls on any day within this range
+     * (in the default time zone)
+     * @param d the time to check
+     * @return true if the specified time falls on any day within this range
+     */
+    public boolean contains(Date d) {
+        LocalDate ld = d.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+        return !ld.isBefore(_from) && !ld.isAfter(_to);
+    }
     
     public static String[] regexes() {
         return _parsers.keySet().stream().map((p) -> p.pattern()).collect(Collectors.toCollection(java.util.ArrayList::new)).toArray(new String[0]);
@@ -0,0 +1,32 @@
+package com.martiansoftware.martifacts;
+
+import com.martiansoftware.martifacts.model.Cursor;
+import java.util.Date;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class CursorTest {
+    
+    public CursorTest() {
+    }
+    
+    @Test public void testRoundTrip() {
+        Cursor c = new Cursor(new Date(1444435200000L), "6f1c1e1e-0b2a-4c8e-9f5d-1d2e3f4a5b6c");
+        assertEquals("1444435200000_6f1c1e1e-0b2a-4c8e-9f5d-1d2e3f4a5b6c", c.toString());
+        assertEquals(c, Cursor.parse(c.toString()));
+        assertEquals(new Date(1444435200000L), Cursor.parse(c.toString()).time());
+    }
+    
+    @Test public void testInvalid() {
+        for (String s : new String[] {"", "_", "123_", "_abc", "abc_def"}) {
+            try {
+                Cursor.parse(s);
+                fail("Expected IllegalArgumentException for '" + s + "'");
+            } catch (IllegalArgumentException expected) {}
+        }
+    }
+}
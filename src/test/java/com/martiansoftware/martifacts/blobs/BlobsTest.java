@@ -0,0 +1,63 @@
+package com.martiansoftware.martifacts.blobs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class BlobsTest {
+
+    private static Blobs blobs;
+    private static byte[] text, binary;
+
+    @BeforeClass public static void setUpClass() throws IOException {
+        blobs = new Blobs(Files.createTempDirectory("martifact-blobs-test"), true);
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) s.append("line ").append(i).append(" of a very compressible log file\n");
+        text = s.toString().getBytes(StandardCharsets.UTF_8);
+        binary = new byte[4096];
+        for (int i = 0; i < binary.length; ++i) binary[i] = (byte) (i * 31);
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (InputStream i = in) { IOUtils.copy(i, bout); }
+        return bout.toByteArray();
+    }
+
+    @Test public void testCompressedRoundTrip() throws IOException {
+        Blobs.Stored stored = blobs.add(new ByteArrayInputStream(text));
+        assertEquals(text.length, stored.size);
+
+        Path gz = blobs.gzipFile(stored.hash).get();
+        assertTrue(Files.size(gz) < text.length);
+        assertEquals(text.length, blobs.get(stored.hash).get().size);
+        assertArrayEquals(text, read(blobs.inputStream(stored.hash).get()));
+
+        assertEquals(stored.hash, blobs.add(new ByteArrayInputStream(text)).hash); // same data, same blob
+        assertEquals(gz, blobs.gzipFile(stored.hash).get());
+    }
+
+    @Test public void testBinaryNotCompressed() throws IOException {
+        Blobs.Stored stored = blobs.add(new ByteArrayInputStream(binary));
+        assertEquals(binary.length, stored.size);
+        assertFalse(blobs.gzipFile(stored.hash).isPresent());
+        assertArrayEquals(binary, read(blobs.inputStream(stored.hash).get()));
+    }
+
+    @Test public void testLooksLikeText() {
+        assertTrue(Blobs.looksLikeText(text, text.length));
+        assertFalse(Blobs.looksLikeText(binary, binary.length));
+    }
+}
@@ -0,0 +1,84 @@
+package com.martiansoftware.martifacts.log;
+
+import com.martiansoftware.martifacts.model.Artifact;
+import com.martiansoftware.martifacts.model.ArtifactStoreTest;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author mlamb
+ */
+public class LogArtifactStoreTest extends ArtifactStoreTest<LogArtifactStore> {
+
+    private static final Logger log = LoggerFactory.getLogger(LogArtifactStoreTest.class);
+
+    @Override protected LogArtifactStore newStore(Path dir) throws IOException {
+        return new LogArtifactStore(dir);
+    }
+
+    @Test public void testAllOldestFirst() {
+        log.debug("testAllOldestFirst()...");
+        assertEquals("file2.dat", store.all().iterator().next().name());
+    }
+
+    @Test public void testReopen() throws IOException, ParseException {
+        log.debug("testReopen()...");
+        Path dir = Files.createTempDirectory("martifact-test");
+        String id;
+        try (LogArtifactStore s = new LogArtifactStore(dir)) {
+            id = s.create("odd\tname\n.txt", s("reopen me"), d("2015-10-10"), t("a", "b", "version:2")).id();
+            s.findById(id).get().untag("b");
+        }
+        try (LogArtifactStore s = new LogArtifactStore(dir)) {
+            Artifact a = s.findById(id).get();
+            assertEquals("odd\tname\n.txt", a.name());
+            assertEquals(d("2015-10-10"), a.time());
+            assertEquals(2, a.tags().size());
+            assertTrue(a.tags().contains("a"));
+            assertTrue(a.tags().contains("version:2"));
+            assertEquals(1, s.findByQuery("2").size());
+            assertEquals(2, s.tagStats().size());
+        }
+    }
+
+    @Test public void testUncommittedTailIsDiscarded() throws IOException, ParseException {
+        log.debug("testUncommittedTailIsDiscarded()...");
+        Path dir = Files.createTempDirectory("martifact-test");
+        try (LogArtifactStore s = new LogArtifactStore(dir)) {
+            s.create("committed", s("committed"), d("2015-10-10"), t("a"));
+        }
+        Files.write(dir.resolve(LogArtifactStore.LOG_FILE),
+                    "A\t00000000-0000-0000-0000-000000000000\ttorn\t".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+        try (LogArtifactStore s = new LogArtifactStore(dir)) {
+            assertEquals(1, s.all().size());
+            s.create("after", s("after"), d("2015-10-11"), t("a"));
+        }
+        try (LogArtifactStore s = new LogArtifactStore(dir)) {
+            assertEquals(2, s.findByQuery("a").size());
+            assertFalse(s.findById("00000000-0000-0000-0000-000000000000").isPresent());
+        }
+    }
+
+    @Test public void testImportFrom() throws IOException {
+        log.debug("testImportFrom()...");
+        try (LogArtifactStore s = new LogArtifactStore(Files.createTempDirectory("martifact-test"))) {
+            assertEquals(4, s.importFrom(store));
+            assertEquals(0, s.importFrom(store)); // already there
+            Artifact a = s.findById(id1).get();
+            assertEquals(store.findById(id1).get().tags(), a.tags());
+            assertEquals(store.findById(id1).get().time(), a.time());
+            assertEquals(store.findById(id1).get().timeAdded(), a.timeAdded());
+            assertEquals(store.tagStats(), s.tagStats());
+        }
+    }
+}
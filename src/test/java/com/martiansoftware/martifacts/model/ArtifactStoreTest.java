@@ -0,0 +1,329 @@
+package com.martiansoftware.martifacts.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests that every ArtifactStore must pass.  Each test gets a new store
+ * (from newStore()) holding the same four artifacts.
+ *
+ * @author mlamb
+ */
+public abstract class ArtifactStoreTest<S extends ArtifactStore & Closeable> {
+
+    protected S store;
+    protected String id1, id2, id3, id4;
+    private static final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
+    private static final Logger log = LoggerFactory.getLogger(ArtifactStoreTest.class);
+
+    protected static Date d(String s) throws ParseException { return sdf.parse(s); }
+    protected static InputStream s(String s) { return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)); }
+    protected static Collection<String> t(String... tags) { return Arrays.asList(tags); }
+
+    /**
+     * Opens (or creates) the store under test in the specified directory
+     * @param dir the directory containing the store
+     * @return the store
+     * @throws IOException
+     */
+    protected abstract S newStore(Path dir) throws IOException;
+
+    @Before public void setUp() throws IOException, ParseException {
+        store = newStore(Files.createTempDirectory("martifact-test"));
+
+        id1 = store.create("file1.txt", s("This is file 1"), d("2015-10-10"), t("txt", "1", "files")).id();
+        id2 = store.create("file2.dat", s("This is file 2"), d("2015-03-14"), t("dat", "2", "files")).id();
+        id3 = store.create("file3",     s("The third file"), d("2015-10-18"), t("3", "files", "noext")).id();
+        id4 = store.create("notags",    s("I have no tags"), d("2016-10-10"), Collections.EMPTY_SET).id();
+    }
+
+    @After public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test public void testTags() {
+        log.debug("testTags()...");
+        SortedSet<String> tags = store.tags();
+        assertEquals(7, tags.size());
+        for (String t : t("txt", "1", "files", "dat", "2", "3", "noext")) {
+            assertTrue(tags.contains(t));
+        }
+    }
+
+    @Test public void testTagStats() {
+        log.debug("testTagStats()...");
+        SortedMap<String, Long> stats = store.tagStats();
+        assertEquals(7, stats.size());
+        assertEquals(3, stats.get("files").longValue());
+        assertEquals(1, stats.get("txt").longValue());
+
+        Artifact a = store.findById(id4).get().tag("files", "testTagStats");
+        assertEquals(4, store.tagStats().get("files").longValue());
+        assertEquals(1, store.tagStats().get("testtagstats").longValue());
+        a.tag("files"); // already tagged, so no change
+        assertEquals(4, store.tagStats().get("files").longValue());
+        a.untag("files", "testTagStats");
+        assertEquals(stats, store.tagStats());
+        assertFalse(store.tags().contains("testtagstats")); // unused tags are dropped as soon as their count drops to zero
+    }
+
+    @Test public void testKeyValueTags() {
+        log.debug("testKeyValueTags()...");
+        Artifact a = store.findById(id4).get().tag("testkv:42", "testkv42");
+        assertEquals(1, store.findByQuery("testkv:42").size());    // the whole tag
+        assertEquals(1, store.findByQuery("42").size());           // just the value
+        assertEquals(1, store.findByQuery("42 testkv42").size());
+        assertEquals(0, store.findByQuery("testkv").size());       // keys alone don't match
+        a.untag("testkv:42", "testkv42");
+        assertEquals(0, store.findByQuery("42").size());
+    }
+
+    @Test public void testTagAndValueOnSameArtifact() {
+        log.debug("testTagAndValueOnSameArtifact()...");
+        store.findById(id2).get().tag("version:2"); // "2" now matches both of its tags
+        assertEquals(1, store.findByQuery("2").size());
+        assertEquals(1, store.findByQuery("2", Optional.empty(), 10).artifacts().size());
+        assertEquals(1, store.countByQuery("2"));
+        assertEquals(1, store.facets("2").get("files").longValue());
+    }
+
+    @Test public void testFindByTags() throws ParseException {
+        log.debug("testFindByTags()...");
+        assertEquals(3, store.findByTags(t("FILES")).size());
+        Collection<Artifact> as = store.findByTags(t("txt"));
+        assertEquals(1, as.size());
+        Artifact a = as.iterator().next();
+        assertEquals("file1.txt", a.name());
+        assertEquals(d("2015-10-10"), a.time());
+        assertEquals(14, a.size());
+        assertEquals("2416dad444a98324d6dbd41536c850f48c37ac4c", a.hash());
+        Collection<String> tags = a.tags();
+        assertEquals(3, tags.size());
+        assertTrue(tags.contains("txt"));
+        assertTrue(tags.contains("1"));
+        assertTrue(tags.contains("files"));
+
+        assertEquals(1, store.findByTags(t("files", "2")).size());
+
+        assertTrue(store.findByTags(t("nosuchtag")).isEmpty());
+    }
+
+    @Test public void testFindById() {
+        log.debug("testFindById()...");
+        Optional<Artifact> oa = store.findById(id3);
+        assertTrue(oa.isPresent());
+        assertEquals("file3", oa.get().name());
+        assertFalse(store.findById("00000000-0000-0000-0000-000000000000").isPresent());
+    }
+
+    @Test public void testFindByHash() {
+        log.debug("testFindByHash()...");
+        Collection<Artifact> as = store.findByHash("71bf590175487ccc49172362955d0de7729e9fb4");
+        assertEquals(1, as.size());
+        Artifact a = as.iterator().next();
+        assertEquals("file2.dat", a.name());
+    }
+
+    @Test public void testFindByQuery() {
+        log.debug("testFindByQuery()...");
+        Collection<Artifact> as = store.findByQuery("2015-10-11+1w");
+        assertEquals(1, as.size());
+        assertEquals("file3", as.iterator().next().name());
+
+        as = store.findByQuery("txt files");
+        assertEquals(1, as.size());
+        assertEquals("file1.txt", as.iterator().next().name());
+
+        as = store.findByQuery("");
+        assertEquals(4, as.size());
+
+        as = store.findByQuery("files 2015-10-10 2015-10-18");
+        assertEquals(2, as.size());
+        Iterator<Artifact> ia = as.iterator();
+        assertEquals("file3", ia.next().name());
+        assertEquals("file1.txt", ia.next().name());
+
+        as = store.findByQuery("files 2015-10-10 tag:txt 2015-10-18");
+        assertEquals(1, as.size());
+        assertEquals("file1.txt", as.iterator().next().name());
+
+        as = store.findByQuery("nosuchtag");
+        assertEquals(0, as.size());
+
+        as = store.findByQuery("*.txt file?.dat");
+        assertEquals(2, as.size());
+        ia = as.iterator();
+        assertEquals("file1.txt", ia.next().name());
+        assertEquals("file2.dat", ia.next().name());
+
+        as = store.findByQuery("name:notags " + id4);
+        assertEquals(1, as.size());
+        assertEquals("notags", as.iterator().next().name());
+
+        as = store.findByQuery("name:notags " + id3);
+        assertEquals(2, as.size());
+        ia = as.iterator();
+        assertEquals("notags", ia.next().name());
+        assertEquals("file3", ia.next().name());
+
+        as = store.findByQuery("name:notags txt");
+        assertEquals(0, as.size());
+
+        as = store.findByQuery("name:notags 2016-01-01-2016-12-31");
+        assertEquals(1, as.size());
+        assertEquals("notags", as.iterator().next().name());
+
+        as = store.findByQuery("71bf590175487ccc49172362955d0de7729e9fb4");
+        assertEquals(1, as.size());
+        assertEquals("file2.dat", as.iterator().next().name());
+
+        as = store.findByQuery("Crazy\"file-\\\"name[].*");
+        assertEquals(0, as.size());
+    }
+
+    @Test public void testPagedQuery() {
+        log.debug("testPagedQuery()...");
+        Page page = store.findByQuery("files", Optional.empty(), 2);
+        assertEquals(2, page.artifacts().size());
+        assertEquals("file3", page.artifacts().get(0).name());
+        assertEquals("file1.txt", page.artifacts().get(1).name());
+        assertTrue(page.next().isPresent());
+
+        page = store.findByQuery("files", page.next(), 2);
+        assertEquals(1, page.artifacts().size());
+        assertEquals("file2.dat", page.artifacts().get(0).name());
+        assertFalse(page.next().isPresent());
+
+        page = store.findByQuery("", Optional.empty(), 3);
+        assertEquals(3, page.artifacts().size());
+        assertEquals("notags", page.artifacts().get(0).name());
+        page = store.findByQuery("", page.next(), 3);
+        assertEquals(1, page.artifacts().size());
+        assertEquals("file2.dat", page.artifacts().get(0).name());
+
+        assertEquals(0, store.findByQuery("nosuchtag", Optional.empty(), 10).artifacts().size());
+
+        assertEquals(3, store.countByQuery("files"));
+        assertEquals(4, store.countByQuery(""));
+        assertEquals(0, store.countByQuery("nosuchtag"));
+    }
+
+    @Test public void testFacets() {
+        log.debug("testFacets()...");
+        SortedMap<String, Long> facets = store.facets("txt");
+        assertEquals(3, facets.size());
+        assertEquals(1, facets.get("txt").longValue());
+        assertEquals(1, facets.get("files").longValue());
+        assertEquals(1, facets.get("1").longValue());
+
+        facets = store.facets("files");
+        assertEquals(7, facets.size());
+        assertEquals(3, facets.get("files").longValue());
+        assertEquals(store.tagStats(), store.facets(""));
+        assertTrue(store.facets("nosuchtag").isEmpty());
+    }
+
+    @Test public void testAddedQuery() {
+        log.debug("testAddedQuery()...");
+        assertEquals(4, store.findByQuery("added:1d").size());   // everything was added today
+        assertEquals(3, store.findByQuery("added:1d files").size());
+        assertEquals(1, store.findByQuery("added:1d 2015-10-11+1w").size());
+        assertEquals(0, store.findByQuery("added:2000-01-01").size());
+        assertEquals(2, store.findByQuery("added:1d", Optional.empty(), 2).artifacts().size());
+    }
+
+    @Test public void testTagAndUntag() {
+        log.debug("testTagAndUntag()...");
+        assertEquals(0, store.findByQuery("testTagAndUntag").size());
+
+        Optional<Artifact> oa = store.findById(id4);
+        assertEquals(0, oa.get().tags().size());
+        oa.get().tag("testTagAndUntag", "andAnother");
+        assertEquals(2, oa.get().tags().size());
+
+        Collection<Artifact> as = store.findByQuery("testTagAndUntag");
+        assertEquals(1, as.size());
+        Artifact a = as.iterator().next();
+        assertEquals(2, a.tags().size());
+        assertTrue(a.tags().contains("testtaganduntag"));
+        assertTrue(a.tags().contains("andanother"));
+        a.untag("andAnother");
+
+        as = store.findByQuery("testTagAndUntag");
+        assertEquals(1, as.size());
+        a = as.iterator().next();
+        assertEquals(1, a.tags().size());
+        assertTrue(a.tags().contains("testtaganduntag"));
+        assertFalse(a.tags().contains("andanother"));
+        a.untag("testtaganduntag");
+
+        oa = store.findById(id4);
+        assertEquals(0, oa.get().tags().size());
+
+        testTags(); // make sure unused tags were dropped
+    }
+
+    @Test public void testConcurrentNewTag() throws Exception {
+        log.debug("testConcurrentNewTag()...");
+        List<String> ids = Arrays.asList(id1, id2, id3, id4);
+        ExecutorService pool = Executors.newFixedThreadPool(ids.size());
+        List<Future<?>> tagged = new java.util.ArrayList<>();
+        for (String id : ids) tagged.add(pool.submit(() -> store.findById(id).get().tag("testConcurrentNewTag")));
+        for (Future<?> f : tagged) f.get();
+        pool.shutdown();
+
+        assertEquals(4, store.tagStats().get("testconcurrentnewtag").longValue()); // one tag, not one per upload
+        assertEquals(4, store.findByTags(t("testConcurrentNewTag")).size());
+        for (String id : ids) store.findById(id).get().untag("testConcurrentNewTag");
+        testTags();
+    }
+
+    @Test public void testAll() {
+        log.debug("testAll()...");
+        assertEquals(4, store.all().size());
+    }
+
+    @Test public void testStoreAndCreateFromHash() throws IOException {
+        log.debug("testStoreAndCreateFromHash()...");
+        assertEquals("71bf590175487ccc49172362955d0de7729e9fb4", store.store(s("This is file 2")));
+        assertFalse(store.createFromHash("nosuchfile", "0000000000000000000000000000000000000000", new Date(), t()).isPresent());
+        assertEquals(Long.valueOf(14), store.dataSize("71bf590175487ccc49172362955d0de7729e9fb4").get());
+        assertFalse(store.dataSize("0000000000000000000000000000000000000000").isPresent());
+    }
+
+    @Test public void testReadArtifact() throws IOException {
+        log.debug("testReadArtifact()...");
+        Optional<Artifact> oa = store.findById(id4);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        IOUtils.copy(oa.get().inputStream(), bout);
+        String s = new String(bout.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals("I have no tags", s);
+    }
+}
@@ -0,0 +1,41 @@
+package com.martiansoftware.martifacts.orient;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class NameIndexTest {
+
+    public NameIndexTest() {
+    }
+
+    private NameIndex index() {
+        NameIndex result = new NameIndex(new Ordinals());
+        result.put("1", "foo-release-1.tar.gz");
+        result.put("2", "Release.TAR.gz");
+        result.put("3", "other.zip");
+        result.put("4", "prerelease.tar.bz2");
+        return result;
+    }
+
+    @Test public void testFind() {
+        NameIndex index = index();
+        assertEquals(Optional.of(Arrays.asList("1", "2")), index.find("*release*.tar.gz", 10));
+        assertEquals(Optional.of(Arrays.asList("1", "2")), index.find("*.GZ", 10));
+        assertEquals(Optional.of(Arrays.asList("3")), index.find("other.zi?", 10));
+        assertEquals(Optional.of(Collections.emptyList()), index.find("*nothing*", 10));
+        assertEquals(Optional.of(Collections.emptyList()), index.find("*release", 10));
+    }
+
+    @Test public void testNotNarrowed() {
+        NameIndex index = index();
+        assertFalse(index.find("a*", 10).isPresent());      // no trigrams to narrow with
+        assertFalse(index.find("*release*", 2).isPresent()); // too many matches
+    }
+}
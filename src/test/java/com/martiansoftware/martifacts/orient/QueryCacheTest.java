@@ -0,0 +1,69 @@
+package com.martiansoftware.martifacts.orient;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class QueryCacheTest {
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicInteger computed = new AtomicInteger();
+
+    public QueryCacheTest() {
+    }
+
+    private String compute(String s) {
+        computed.incrementAndGet();
+        return s.toUpperCase();
+    }
+
+    @Test public void testHitsAndInvalidation() {
+        QueryCache cache = new QueryCache(10, 10, 100, generation::get);
+        assertEquals("A", cache.get("a", () -> compute("a")));
+        assertEquals("A", cache.get("a", () -> compute("a")));
+        assertEquals(1, computed.get());
+
+        generation.incrementAndGet(); // a write makes everything stale
+        assertEquals("A", cache.get("a", () -> compute("a")));
+        assertEquals(2, computed.get());
+
+        assertEquals(1L, cache.stats().get("querycache.hits"));
+        assertEquals(2L, cache.stats().get("querycache.misses"));
+    }
+
+    @Test public void testBounds() {
+        QueryCache cache = new QueryCache(2, 3, 100, generation::get);
+        cache.get("a", () -> compute("a"));
+        cache.get("b", () -> compute("b"));
+        cache.get("a", () -> compute("a")); // a is now more recently used than b
+        cache.get("c", () -> compute("c")); // evicts b
+        assertEquals(2, cache.stats().get("querycache.size"));
+        cache.get("a", () -> compute("a"));
+        cache.get("b", () -> compute("b"));
+        assertEquals(4, computed.get());
+
+        List<Integer> big = Arrays.asList(1, 2, 3, 4);
+        cache.get("big", () -> { computed.incrementAndGet(); return big; });
+        cache.get("big", () -> { computed.incrementAndGet(); return big; }); // too big to cache
+        assertEquals(6, computed.get());
+    }
+
+    @Test public void testRowBound() {
+        QueryCache cache = new QueryCache(10, 3, 5, generation::get);
+        cache.get("a", () -> Arrays.asList(1, 2, 3));
+        cache.get("b", () -> Arrays.asList(4, 5));
+        assertEquals(5L, cache.stats().get("querycache.rows"));
+        cache.get("c", () -> "c"); // one more row evicts a, the least recently used
+        assertEquals(2, cache.stats().get("querycache.size"));
+        assertEquals(3L, cache.stats().get("querycache.rows"));
+        cache.get("b", () -> { computed.incrementAndGet(); return Arrays.asList(4, 5); });
+        assertEquals(0, computed.get()); // b is still cached
+    }
+}
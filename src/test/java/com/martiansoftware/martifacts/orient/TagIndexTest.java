@@ -0,0 +1,70 @@
+package com.martiansoftware.martifacts.orient;
+
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class TagIndexTest {
+
+    private final ORID nightly = new ORecordId(12, 0), rare = new ORecordId(12, 1), v2 = new ORecordId(12, 2), two = new ORecordId(12, 3);
+
+    public TagIndexTest() {
+    }
+
+    private TagIndex index() {
+        TagIndex result = new TagIndex();
+        for (int i = 0; i < 100; ++i) result.add(nightly, i);
+        result.add(rare, 42);
+        result.add(rare, 7);
+        result.add(rare, 200);
+        result.add(v2, 42);
+        result.add(two, 7);
+        return result;
+    }
+
+    @Test public void testFindAll() {
+        TagIndex index = index();
+        assertArrayEquals(new int[] {7, 42, 200}, index.findAll(Arrays.asList(Arrays.asList(rare))));
+        assertArrayEquals(new int[] {7, 42}, index.findAll(Arrays.asList(Arrays.asList(nightly), Arrays.asList(rare))));
+        assertArrayEquals(new int[] {7, 42}, index.findAll(Arrays.asList(Arrays.asList(v2, two), Arrays.asList(nightly))));
+        assertArrayEquals(new int[0], index.findAll(Arrays.asList(Arrays.asList(v2), Arrays.asList(two))));
+        assertArrayEquals(new int[0], index.findAll(Collections.emptyList()));
+    }
+
+    @Test public void testRemove() {
+        TagIndex index = index();
+        index.remove(rare, 42);
+        index.remove(rare, 43); // not there
+        assertArrayEquals(new int[] {7}, index.findAll(Arrays.asList(Arrays.asList(nightly), Arrays.asList(rare))));
+        index.remove(two, 7);
+        assertArrayEquals(new int[0], index.findAll(Arrays.asList(Arrays.asList(two))));
+    }
+
+    @Test public void testCount() {
+        TagIndex index = index();
+        assertEquals(100, index.count(nightly));
+        assertEquals(3, index.count(rare));
+        index.remove(two, 7);
+        assertEquals(0, index.count(two));
+        assertEquals(0, index.count(new ORecordId(12, 99)));
+    }
+
+    @Test public void testCounts() {
+        TagIndex index = index();
+        java.util.Map<ORID, Integer> counts = index.counts(new int[] {7, 42, 150});
+        assertEquals(4, counts.size());
+        assertEquals(Integer.valueOf(2), counts.get(nightly));
+        assertEquals(Integer.valueOf(2), counts.get(rare));
+        assertEquals(Integer.valueOf(1), counts.get(v2));
+        assertEquals(Integer.valueOf(1), counts.get(two));
+        assertTrue(index.counts(new int[] {150}).isEmpty());
+        assertTrue(index.counts(new int[0]).isEmpty());
+    }
+}
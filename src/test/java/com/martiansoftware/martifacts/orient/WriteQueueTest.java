@@ -0,0 +1,109 @@
+package com.martiansoftware.martifacts.orient;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class WriteQueueTest {
+
+    private final List<Integer> batchSizes = new java.util.concurrent.CopyOnWriteArrayList<>();
+    private final List<Boolean> retries = new java.util.concurrent.CopyOnWriteArrayList<>();
+
+    public WriteQueueTest() {
+    }
+
+    private List<Object> commit(List<WriteQueue.Write<?>> writes, boolean retry) {
+        retries.add(retry);
+        WriteBatch batch = new WriteBatch();
+        List<Object> results = new java.util.ArrayList<>();
+        for (WriteQueue.Write<?> w : writes) results.add(w.apply(batch));
+        batchSizes.add(writes.size());
+        batch.committed();
+        return results;
+    }
+
+    @Test public void testGroupCommit() throws Exception {
+        WriteQueue q = new WriteQueue(this::commit, 0, 10);
+        CountDownLatch blocked = new CountDownLatch(1), release = new CountDownLatch(1);
+        CompletableFuture<String> first = q.submit(b -> {
+            blocked.countDown();
+            try { release.await(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            return "first";
+        });
+        blocked.await();
+
+        // these queue up while the writer is busy, so they're committed together
+        List<CompletableFuture<Integer>> rest = new java.util.ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            int n = i;
+            rest.add(q.submit(b -> n));
+        }
+        release.countDown();
+
+        assertEquals("first", first.get());
+        for (int i = 0; i < 5; ++i) assertEquals(Integer.valueOf(i), rest.get(i).get());
+        assertEquals(Arrays.asList(1, 5), batchSizes);
+        assertEquals(2L, q.stats().get("writequeue.batches"));
+        assertEquals(6L, q.stats().get("writequeue.writes"));
+        q.close();
+    }
+
+    @Test public void testFailedWriteIsIsolated() throws Exception {
+        WriteQueue q = new WriteQueue(this::commit, 0, 10);
+        CountDownLatch blocked = new CountDownLatch(1), release = new CountDownLatch(1);
+        q.submit(b -> {
+            blocked.countDown();
+            try { release.await(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            return null;
+        });
+        blocked.await();
+
+        List<String> committed = new java.util.concurrent.CopyOnWriteArrayList<>();
+        CompletableFuture<String> a = q.submit(b -> { b.afterCommit(() -> committed.add("a")); return "a"; });
+        CompletableFuture<String> bad = q.submit(b -> { throw new IllegalArgumentException("bad"); });
+        CompletableFuture<String> c = q.submit(b -> { b.afterCommit(() -> committed.add("c")); return "c"; });
+        release.countDown();
+
+        assertEquals("a", a.get());
+        assertEquals("c", c.get());
+        try {
+            q.run(b -> { throw new IllegalArgumentException("bad"); });
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {}
+        assertTrue(bad.isCompletedExceptionally());
+        assertEquals(Arrays.asList("a", "c"), committed);
+        assertEquals(3L, q.stats().get("writequeue.retried"));
+        // the failed batch could retry conflicts, but its writes retried alone can't
+        assertEquals(Arrays.asList(true, true, false, false, false, true), retries);
+        q.close();
+    }
+
+    @Test public void testErrorDoesNotStopWriter() throws Exception {
+        WriteQueue q = new WriteQueue(this::commit, 0, 10);
+        try {
+            q.run(b -> { throw new AssertionError("boom"); });
+            fail("expected an AssertionError");
+        } catch (AssertionError expected) {
+            assertEquals("boom", expected.getMessage());
+        }
+        assertEquals("still writing", q.run(b -> "still writing"));
+        q.close();
+    }
+
+    @Test public void testClose() throws Exception {
+        WriteQueue q = new WriteQueue(this::commit, 0, 10);
+        assertEquals("x", q.run(b -> "x"));
+        q.close();
+        try {
+            q.submit(b -> "y");
+            fail("expected an IllegalStateException");
+        } catch (IllegalStateException expected) {}
+    }
+}
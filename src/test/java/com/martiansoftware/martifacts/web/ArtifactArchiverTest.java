@@ -0,0 +1,28 @@
+package com.martiansoftware.martifacts.web;
+
+import java.util.Optional;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class ArtifactArchiverTest {
+
+    public ArtifactArchiverTest() {
+    }
+
+    @Test public void testBaseName() {
+        assertEquals(Optional.of("build.log"), ArtifactArchiver.baseName("build.log"));
+        assertEquals(Optional.of(".bashrc"), ArtifactArchiver.baseName("../../.bashrc"));
+        assertEquals(Optional.of("passwd"), ArtifactArchiver.baseName("/etc/passwd"));
+        assertEquals(Optional.of("evil.exe"), ArtifactArchiver.baseName("..\\..\\evil.exe"));
+        assertEquals(Optional.of("c.txt"), ArtifactArchiver.baseName("a/./b/c.txt"));
+        assertFalse(ArtifactArchiver.baseName("").isPresent());
+        assertFalse(ArtifactArchiver.baseName("..").isPresent());
+        assertFalse(ArtifactArchiver.baseName("foo/..").isPresent());
+        assertEquals(Optional.of("foo"), ArtifactArchiver.baseName("foo/"));
+        assertFalse(ArtifactArchiver.baseName("/").isPresent());
+    }
+}
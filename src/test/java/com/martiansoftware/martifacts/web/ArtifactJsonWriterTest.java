@@ -0,0 +1,65 @@
+package com.martiansoftware.martifacts.web;
+
+import com.martiansoftware.martifacts.model.Artifact;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.text.DateFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class ArtifactJsonWriterTest {
+
+    public ArtifactJsonWriterTest() {
+    }
+
+    private Artifact artifact(String name, String... tags) {
+        return new Artifact() {
+            @Override public String id() { return "id1"; }
+            @Override public String name() { return name; }
+            @Override public String hash() { return "abcd"; }
+            @Override public long size() { return 42; }
+            @Override public Date time() { return new Date(0); }
+            @Override public Date timeAdded() { return new Date(1000); }
+            @Override public SortedSet<String> tags() { return new TreeSet<>(Arrays.asList(tags)); }
+            @Override public Artifact tag(Collection<String> tags) { throw new UnsupportedOperationException(); }
+            @Override public Artifact untag(Collection<String> tags) { throw new UnsupportedOperationException(); }
+            @Override public InputStream inputStream() { throw new UnsupportedOperationException(); }
+        };
+    }
+
+    private String json(String urlPrefix, Artifact... artifacts) throws Exception {
+        StringWriter sw = new StringWriter();
+        new ArtifactJsonWriter(sw, urlPrefix).write(Arrays.asList(artifacts));
+        return sw.toString();
+    }
+
+    @Test public void testEmpty() throws Exception {
+        assertEquals("[]", json(null));
+    }
+
+    @Test public void testArtifacts() throws Exception {
+        DateFormat df = DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, Locale.US);
+        String one = String.format("{\"addedtime\":\"%s\",\"filetime\":\"%s\",\"id\":\"id1\",\"name\":\"a.txt\",\"sha1\":\"abcd\",\"size\":42,\"tags\":[\"x\",\"y:z\"],\"url\":\"http://host/get/id1\"}",
+                                    df.format(new Date(1000)), df.format(new Date(0)));
+        Artifact a = artifact("a.txt", "y:z", "x");
+        assertEquals("[" + one + "," + one + "]", json("http://host/get/", a, a));
+    }
+
+    @Test public void testEscaping() throws Exception {
+        String s = json(null, artifact("q\"b\\n\nt\tc\u0001"));
+        assertTrue(s.contains("\"name\":\"q\\\"b\\\\n\\nt\\tc\\u0001\""));
+        assertFalse(s.contains("url"));
+        assertTrue(s.contains("\"tags\":[]"));
+    }
+}
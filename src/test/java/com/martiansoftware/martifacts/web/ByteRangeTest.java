@@ -0,0 +1,54 @@
+package com.martiansoftware.martifacts.web;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class ByteRangeTest {
+
+    public ByteRangeTest() {
+    }
+
+    private void assertRange(long first, long last, ByteRange r) {
+        assertEquals(first, r.first);
+        assertEquals(last, r.last);
+    }
+
+    @Test public void testSingleRanges() {
+        assertRange(0, 499, ByteRange.parse("bytes=0-499", 10000).get(0));
+        assertRange(500, 9999, ByteRange.parse("bytes=500-", 10000).get(0));
+        assertRange(9500, 9999, ByteRange.parse("bytes=-500", 10000).get(0));
+        assertRange(0, 99, ByteRange.parse("bytes=-500", 100).get(0));
+        assertRange(50, 99, ByteRange.parse("bytes=50-5000", 100).get(0));
+        assertEquals(500, ByteRange.parse("bytes=0-499", 10000).get(0).length());
+        assertEquals("bytes 0-499/10000", ByteRange.parse("bytes=0-499", 10000).get(0).contentRange(10000));
+    }
+
+    @Test public void testMultipleRanges() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-0, 10-19,-1", 100);
+        assertEquals(3, ranges.size());
+        assertRange(0, 0, ranges.get(0));
+        assertRange(10, 19, ranges.get(1));
+        assertRange(99, 99, ranges.get(2));
+    }
+
+    @Test public void testUnsatisfiable() {
+        assertTrue(ByteRange.parse("bytes=100-", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-10", 0).isEmpty());
+        assertEquals(1, ByteRange.parse("bytes=200-300,0-1", 100).size());
+    }
+
+    @Test public void testMalformed() {
+        for (String h : new String[] {"items=0-1", "bytes=", "bytes=-", "bytes=5-1", "bytes=a-b", "bytes=0-1;2-3"}) {
+            try {
+                ByteRange.parse(h, 100);
+                fail("Expected IllegalArgumentException for '" + h + "'");
+            } catch (IllegalArgumentException expected) {}
+        }
+    }
+}
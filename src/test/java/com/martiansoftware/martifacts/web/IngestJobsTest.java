@@ -0,0 +1,62 @@
+package com.martiansoftware.martifacts.web;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author mlamb
+ */
+public class IngestJobsTest {
+
+    public IngestJobsTest() {
+    }
+
+    private static void await(IngestJobs.Job job) throws InterruptedException {
+        while (job.status() == IngestJobs.Status.QUEUED || job.status() == IngestJobs.Status.RUNNING) Thread.sleep(5);
+    }
+
+    @Test public void testJobs() throws Exception {
+        IngestJobs jobs = new IngestJobs(1, 10, 10);
+        IngestJobs.Job ok = jobs.submit(() -> Collections.emptyList()).get();
+        IngestJobs.Job bad = jobs.submit(() -> { throw new java.io.IOException("No data stored"); }).get();
+        await(ok);
+        await(bad);
+
+        assertEquals(IngestJobs.Status.DONE, ok.status());
+        assertEquals(0, ok.artifacts().size());
+        assertEquals(IngestJobs.Status.FAILED, bad.status());
+        assertEquals("No data stored", bad.error());
+        assertSame(ok, jobs.get(ok.id()).get());
+        assertFalse(jobs.get("nosuchjob").isPresent());
+        assertEquals(1L, jobs.stats().get("ingest.done"));
+        assertEquals(1L, jobs.stats().get("ingest.failed"));
+    }
+
+    @Test public void testBackpressure() throws Exception {
+        IngestJobs jobs = new IngestJobs(1, 1, 10);
+        CountDownLatch running = new CountDownLatch(1), release = new CountDownLatch(1);
+        IngestJobs.Job first = jobs.submit(() -> {
+            running.countDown();
+            release.await();
+            return Collections.emptyList();
+        }).get();
+        running.await();
+
+        assertFalse(jobs.isFull());
+        IngestJobs.Job second = jobs.submit(() -> Collections.emptyList()).get(); // waits in the queue
+        assertTrue(jobs.isFull());
+        Optional<IngestJobs.Job> third = jobs.submit(() -> Collections.emptyList());
+        assertFalse(third.isPresent());
+        assertEquals(1L, jobs.stats().get("ingest.rejected"));
+
+        release.countDown();
+        await(first);
+        await(second);
+        assertEquals(IngestJobs.Status.DONE, second.status());
+        assertFalse(jobs.isFull());
+    }
+}
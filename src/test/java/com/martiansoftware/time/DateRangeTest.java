@@ -27,6 +27,15 @@ public class DateRangeTest {
         assertEquals(ld, dr.to());
     }
 
+    @Test public void testContains() throws Exception {
+        DateRange dr = DateRange.forQuery("2015-10-09+-1d");
+        java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        assertFalse(dr.contains(sdf.parse("2015-10-07 23:59:59")));
+        assertTrue(dr.contains(sdf.parse("2015-10-08 00:00:00")));
+        assertTrue(dr.contains(sdf.parse("2015-10-10 23:59:59")));
+        assertFalse(dr.contains(sdf.parse("2015-10-11 00:00:00")));
+    }
+
     @Test public void testAgoQuery() throws Exception {
         DateRange dr = DateRange.forQuery("-2w3d");
         assertEquals(LocalDate.now().minusWeeks(2).minusDays(3), dr.from());